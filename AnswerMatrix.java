@@ -0,0 +1,473 @@
+/**
+ * AnswerMatrix.java provides a compact storage of worker labels on tasks. Tasks and
+ * workers are identified by dense ordinals. The labels in the original dataset are
+ * kept in compressed sparse rows, with a worker-to-tasks view sorted by task ordinal
+ * and a task-to-workers view. The labels provided in the current run are kept in
+ * growable rows of int arrays for each task and each worker, where a label of -1
+ * means that the task has been assigned but not labeled yet. Each entry of these rows
+ * points to the position of the same assignment in the other row, so that the labels of
+ * a banned worker are revoked in time proportional to her labels. The matrix of a dataset
+ * only holds the original labels, and each run creates its own matrix that shares
+ * them and holds the tasks, workers and current labels of the run.
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class AnswerMatrix {
+    private ArrayList<Task> tasks; // task of each ordinal
+    private ArrayList<Worker> workers; // worker of each ordinal
+
+    /* original labels collected before building the rows */
+    private int[] triple_task; // task ordinal of each original label
+    private int[] triple_worker; // worker ordinal of each original label
+    private int[] triple_label; // value of each original label
+    private int triple_num; // number of original labels
+
+    /* original labels in compressed sparse rows */
+    private int[] task_start; // start of the row of each task
+    private int[] task_workers; // worker ordinals in task rows
+    private int[] task_answers; // labels in task rows
+    private int[] worker_start; // start of the row of each worker
+    private int[] worker_tasks; // task ordinals in worker rows (ascending in each row)
+    private int[] worker_answers; // labels in worker rows
+
+    /* current labels */
+    private int[][] assigned; // worker ordinals assigned to each task
+    private int[][] assigned_labels; // current labels of the assigned workers of each task
+    private int[][] assigned_slots; // position of each assignment of each task in the worker's row
+    private int[] assigned_num; // number of assigned workers of each task
+    private int[][] labeled; // task ordinals assigned to each worker
+    private int[][] labeled_labels; // current labels of each worker on her assigned tasks
+    private int[][] labeled_slots; // position of each assignment of each worker in the task's row
+    private int[] labeled_num; // number of assigned tasks of each worker
+
+    /* revoked labels */
+    private int[] revoked_tasks; // task ordinals of the labels removed by the latest revocation
+    private int[] revoked_labels; // values of the labels removed by the latest revocation
+
+    /* initialization of the matrix of a dataset */
+    public AnswerMatrix() {
+        triple_task = new int[1024];
+        triple_worker = new int[1024];
+        triple_label = new int[1024];
+        triple_num = 0;
+    }
+
+    /* initialization of the matrix of a run, which shares the original labels of the dataset */
+    public AnswerMatrix(AnswerMatrix original) {
+        task_start = original.task_start;
+        task_workers = original.task_workers;
+        task_answers = original.task_answers;
+        worker_start = original.worker_start;
+        worker_tasks = original.worker_tasks;
+        worker_answers = original.worker_answers;
+
+        int task_num = task_start.length - 1;
+        int worker_num = worker_start.length - 1;
+        tasks = new ArrayList<Task>(task_num);
+        workers = new ArrayList<Worker>(worker_num);
+
+        // allocate the rows of current labels with the size of the original rows
+        assigned = new int[task_num][];
+        assigned_labels = new int[task_num][];
+        assigned_slots = new int[task_num][];
+        assigned_num = new int[task_num];
+        for (int t = 0; t < task_num; t++) {
+            int size = Math.max(4, task_start[t + 1] - task_start[t]);
+            assigned[t] = new int[size];
+            assigned_labels[t] = new int[size];
+            assigned_slots[t] = new int[size];
+        }
+        labeled = new int[worker_num][];
+        labeled_labels = new int[worker_num][];
+        labeled_slots = new int[worker_num][];
+        labeled_num = new int[worker_num];
+        for (int w = 0; w < worker_num; w++) {
+            int size = Math.max(4, worker_start[w + 1] - worker_start[w]);
+            labeled[w] = new int[size];
+            labeled_labels[w] = new int[size];
+            labeled_slots[w] = new int[size];
+        }
+        revoked_tasks = new int[16];
+        revoked_labels = new int[16];
+    }
+
+    /* add the task of the next ordinal to the matrix of a run */
+    public void addTask(Task task) {
+        task.setIndex(tasks.size());
+        task.setAnswers(this);
+        tasks.add(task);
+    }
+
+    /* add the worker of the next ordinal to the matrix of a run */
+    public void addWorker(Worker worker) {
+        worker.setIndex(workers.size());
+        worker.setAnswers(this);
+        workers.add(worker);
+    }
+
+    /* add a label of a worker on a task in the original dataset */
+    public void addAnswer(int t, int w, int label) {
+        if (triple_num == triple_task.length) {
+            triple_task = Arrays.copyOf(triple_task, triple_num * 2);
+            triple_worker = Arrays.copyOf(triple_worker, triple_num * 2);
+            triple_label = Arrays.copyOf(triple_label, triple_num * 2);
+        }
+        triple_task[triple_num] = t;
+        triple_worker[triple_num] = w;
+        triple_label[triple_num] = label;
+        triple_num++;
+    }
+
+    /* build the rows of original labels after all labels are added */
+    public void build(int task_num, int worker_num) {
+        // count the labels in each row
+        task_start = new int[task_num + 1];
+        worker_start = new int[worker_num + 1];
+        for (int i = 0; i < triple_num; i++) {
+            task_start[triple_task[i] + 1]++;
+            worker_start[triple_worker[i] + 1]++;
+        }
+        for (int t = 0; t < task_num; t++) {
+            task_start[t + 1] += task_start[t];
+        }
+        for (int w = 0; w < worker_num; w++) {
+            worker_start[w + 1] += worker_start[w];
+        }
+
+        // fill the task rows in the order of addition
+        task_workers = new int[triple_num];
+        task_answers = new int[triple_num];
+        int[] next = Arrays.copyOf(task_start, task_num);
+        for (int i = 0; i < triple_num; i++) {
+            int pos = next[triple_task[i]]++;
+            task_workers[pos] = triple_worker[i];
+            task_answers[pos] = triple_label[i];
+        }
+
+        // fill the worker rows by scanning task rows, so that each worker row is sorted by task ordinal
+        worker_tasks = new int[triple_num];
+        worker_answers = new int[triple_num];
+        next = Arrays.copyOf(worker_start, worker_num);
+        for (int t = 0; t < task_num; t++) {
+            for (int i = task_start[t]; i < task_start[t + 1]; i++) {
+                int pos = next[task_workers[i]]++;
+                worker_tasks[pos] = t;
+                worker_answers[pos] = task_answers[i];
+            }
+        }
+        triple_task = null;
+        triple_worker = null;
+        triple_label = null;
+    }
+
+    /* return the task of an ordinal */
+    public Task getTask(int t) {
+        return tasks.get(t);
+    }
+
+    /* return the worker of an ordinal */
+    public Worker getWorker(int w) {
+        return workers.get(w);
+    }
+
+    /* return the number of tasks */
+    public int getTaskNum() {
+        return task_start.length - 1;
+    }
+
+    /* return the number of workers */
+    public int getWorkerNum() {
+        return worker_start.length - 1;
+    }
+
+    /* return the start of the task's row of original labels */
+    public int taskStart(int t) {
+        return task_start[t];
+    }
+
+    /* return the end of the task's row of original labels */
+    public int taskEnd(int t) {
+        return task_start[t + 1];
+    }
+
+    /* return the worker ordinal at a position of task rows */
+    public int taskWorker(int i) {
+        return task_workers[i];
+    }
+
+    /* return the original label at a position of task rows */
+    public int taskAnswer(int i) {
+        return task_answers[i];
+    }
+
+    /* return the start of the worker's row of original labels */
+    public int workerStart(int w) {
+        return worker_start[w];
+    }
+
+    /* return the end of the worker's row of original labels */
+    public int workerEnd(int w) {
+        return worker_start[w + 1];
+    }
+
+    /* return the task ordinal at a position of worker rows */
+    public int workerTask(int i) {
+        return worker_tasks[i];
+    }
+
+    /* return the original label at a position of worker rows */
+    public int workerAnswer(int i) {
+        return worker_answers[i];
+    }
+
+    /* return the original label of a worker on a task (-1 if the worker did not label the task) */
+    public int getAnswer(int w, int t) {
+        int pos = Arrays.binarySearch(worker_tasks, worker_start[w], worker_start[w + 1], t);
+        if (pos >= 0) {
+            return worker_answers[pos];
+        }
+        return -1;
+    }
+
+    /* assign a task to a worker */
+    public void assign(int w, int t) {
+        if (assigned_num[t] == assigned[t].length) {
+            assigned[t] = Arrays.copyOf(assigned[t], assigned_num[t] * 2);
+            assigned_labels[t] = Arrays.copyOf(assigned_labels[t], assigned_num[t] * 2);
+            assigned_slots[t] = Arrays.copyOf(assigned_slots[t], assigned_num[t] * 2);
+        }
+        if (labeled_num[w] == labeled[w].length) {
+            labeled[w] = Arrays.copyOf(labeled[w], labeled_num[w] * 2);
+            labeled_labels[w] = Arrays.copyOf(labeled_labels[w], labeled_num[w] * 2);
+            labeled_slots[w] = Arrays.copyOf(labeled_slots[w], labeled_num[w] * 2);
+        }
+        assigned[t][assigned_num[t]] = w;
+        assigned_labels[t][assigned_num[t]] = -1;
+        assigned_slots[t][assigned_num[t]] = labeled_num[w];
+        labeled[w][labeled_num[w]] = t;
+        labeled_labels[w][labeled_num[w]] = -1;
+        labeled_slots[w][labeled_num[w]] = assigned_num[t];
+        assigned_num[t]++;
+        labeled_num[w]++;
+    }
+
+    /* set the current label of a worker on an assigned task and return the previous label (-1 if not labeled) */
+    public int label(int w, int t, int label) {
+        // the worker is usually the latest one assigned to the task, so search backwards
+        for (int i = assigned_num[t] - 1; i >= 0; i--) {
+            if (assigned[t][i] == w) {
+                int previous = assigned_labels[t][i];
+                assigned_labels[t][i] = label;
+                labeled_labels[w][assigned_slots[t][i]] = label;
+                return previous;
+            }
+        }
+        return -1;
+    }
+
+    /* remove the assignment of a task to a worker and return the removed label (-1 if not labeled) */
+    public int remove(int w, int t) {
+        for (int i = 0; i < assigned_num[t]; i++) {
+            if (assigned[t][i] == w) {
+                int label = assigned_labels[t][i];
+                int j = assigned_slots[t][i];
+                removeAssigned(t, i);
+                labeled_num[w]--;
+                for (int k = j; k < labeled_num[w]; k++) {
+                    moveLabeled(w, k + 1, k);
+                }
+                return label;
+            }
+        }
+        return -1;
+    }
+
+    /* remove the assignments of a worker to normal tasks and return the number of removed labels,
+       which are kept until the next revocation */
+    public int revoke(int w) {
+        int revoked_num = 0;
+        int kept_num = 0;
+        if (revoked_tasks.length < labeled_num[w]) {
+            revoked_tasks = new int[labeled_num[w]];
+            revoked_labels = new int[labeled_num[w]];
+        }
+        // a single pass over the worker's row keeps her golden tasks in order
+        for (int j = 0; j < labeled_num[w]; j++) {
+            int t = labeled[w][j];
+            if (tasks.get(t).isGolden()) {
+                moveLabeled(w, j, kept_num++);
+            } else {
+                revoked_tasks[revoked_num] = t;
+                revoked_labels[revoked_num] = labeled_labels[w][j];
+                revoked_num++;
+                removeAssigned(t, labeled_slots[w][j]);
+            }
+        }
+        labeled_num[w] = kept_num;
+        return revoked_num;
+    }
+
+    /* return the task ordinal of the ith label removed by the latest revocation */
+    public int revokedTask(int i) {
+        return revoked_tasks[i];
+    }
+
+    /* return the value of the ith label removed by the latest revocation */
+    public int revokedLabel(int i) {
+        return revoked_labels[i];
+    }
+
+    /* remove the ith assignment from the task's row and update the positions of the following ones */
+    private void removeAssigned(int t, int i) {
+        assigned_num[t]--;
+        for (int k = i; k < assigned_num[t]; k++) {
+            assigned[t][k] = assigned[t][k + 1];
+            assigned_labels[t][k] = assigned_labels[t][k + 1];
+            assigned_slots[t][k] = assigned_slots[t][k + 1];
+            labeled_slots[assigned[t][k]][assigned_slots[t][k]] = k;
+        }
+    }
+
+    /* move an assignment in the worker's row from position from to position to */
+    private void moveLabeled(int w, int from, int to) {
+        labeled[w][to] = labeled[w][from];
+        labeled_labels[w][to] = labeled_labels[w][from];
+        labeled_slots[w][to] = labeled_slots[w][from];
+        assigned_slots[labeled[w][to]][labeled_slots[w][to]] = to;
+    }
+
+    /* write the current labels into a checkpoint as the row of each task, where each assignment is written as the worker
+       ordinal, the label and the position in the worker's row, which determine the rows of workers */
+    public void save(DataOutputStream out) throws IOException {
+        for (int t = 0; t < assigned_num.length; t++) {
+            out.writeInt(assigned_num[t]);
+            for (int i = 0; i < assigned_num[t]; i++) {
+                out.writeInt(assigned[t][i]);
+                out.writeInt(assigned_labels[t][i]);
+                out.writeInt(assigned_slots[t][i]);
+            }
+        }
+    }
+
+    /* restore the current labels of a matrix without current labels from a checkpoint */
+    public void restore(DataInputStream in) throws IOException {
+        for (int t = 0; t < assigned_num.length; t++) {
+            int num = in.readInt();
+            if (num > assigned[t].length) {
+                assigned[t] = new int[num];
+                assigned_labels[t] = new int[num];
+                assigned_slots[t] = new int[num];
+            }
+            assigned_num[t] = num;
+            for (int i = 0; i < num; i++) {
+                int w = in.readInt();
+                int label = in.readInt();
+                int j = in.readInt();
+                assigned[t][i] = w;
+                assigned_labels[t][i] = label;
+                assigned_slots[t][i] = j;
+                if (j >= labeled[w].length) {
+                    int size = Math.max(j + 1, labeled[w].length * 2);
+                    labeled[w] = Arrays.copyOf(labeled[w], size);
+                    labeled_labels[w] = Arrays.copyOf(labeled_labels[w], size);
+                    labeled_slots[w] = Arrays.copyOf(labeled_slots[w], size);
+                }
+                labeled[w][j] = t;
+                labeled_labels[w][j] = label;
+                labeled_slots[w][j] = i;
+                labeled_num[w] = Math.max(labeled_num[w], j + 1);
+            }
+        }
+    }
+
+    /* return the current label of a worker on a task (-1 if the task is not assigned to the worker) */
+    public int getLabel(int w, int t) {
+        // search the shorter of the two rows
+        if (assigned_num[t] <= labeled_num[w]) {
+            for (int i = 0; i < assigned_num[t]; i++) {
+                if (assigned[t][i] == w) {
+                    return assigned_labels[t][i];
+                }
+            }
+        } else {
+            for (int i = 0; i < labeled_num[w]; i++) {
+                if (labeled[w][i] == t) {
+                    return labeled_labels[w][i];
+                }
+            }
+        }
+        return -1;
+    }
+
+    /* check whether a task is assigned to a worker */
+    public boolean isAssigned(int w, int t) {
+        if (assigned_num[t] <= labeled_num[w]) {
+            for (int i = 0; i < assigned_num[t]; i++) {
+                if (assigned[t][i] == w) {
+                    return true;
+                }
+            }
+        } else {
+            for (int i = 0; i < labeled_num[w]; i++) {
+                if (labeled[w][i] == t) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /* return the number of current assignments of all tasks */
+    public int assignedTotal() {
+        int total = 0;
+        for (int t = 0; t < assigned_num.length; t++) {
+            total += assigned_num[t];
+        }
+        return total;
+    }
+
+    /* copy the current rows of all tasks into compressed sparse rows, where start has one entry more than the tasks */
+    public void copyAssigned(int[] start, int[] workers, int[] labels) {
+        start[0] = 0;
+        for (int t = 0; t < assigned_num.length; t++) {
+            System.arraycopy(assigned[t], 0, workers, start[t], assigned_num[t]);
+            System.arraycopy(assigned_labels[t], 0, labels, start[t], assigned_num[t]);
+            start[t + 1] = start[t] + assigned_num[t];
+        }
+    }
+
+    /* return the number of workers assigned to a task */
+    public int assignedNum(int t) {
+        return assigned_num[t];
+    }
+
+    /* return the ith worker ordinal assigned to a task */
+    public int assignedWorker(int t, int i) {
+        return assigned[t][i];
+    }
+
+    /* return the current label of the ith worker assigned to a task */
+    public int assignedLabel(int t, int i) {
+        return assigned_labels[t][i];
+    }
+
+    /* return the number of tasks assigned to a worker */
+    public int labeledNum(int w) {
+        return labeled_num[w];
+    }
+
+    /* return the ith task ordinal assigned to a worker */
+    public int labeledTask(int w, int i) {
+        return labeled[w][i];
+    }
+
+    /* return the current label of a worker on her ith assigned task */
+    public int labeledLabel(int w, int i) {
+        return labeled_labels[w][i];
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * ArrivalProcess.java describes how workers arrive in the discrete-event simulation by
+ * the time between two consecutive arrivals. Poisson arrivals and arrivals at a constant
+ * rate are provided, and other processes can be plugged in the same way.
+ */
+
+import java.util.Random;
+
+public interface ArrivalProcess {
+    /* return the time in seconds from the previous arrival to the next one */
+    double next(Random rand);
+
+    /* return the process of Poisson arrivals with a rate in workers per second */
+    static ArrivalProcess poisson(double rate) {
+        return rand -> -Math.log(1 - rand.nextDouble()) / rate;
+    }
+
+    /* return the process of arrivals at a constant rate in workers per second */
+    static ArrivalProcess constant(double rate) {
+        return rand -> 1 / rate;
+    }
+
+    /* return the process of a kind ("poisson" or "constant") with a rate in workers per second */
+    static ArrivalProcess of(String kind, double rate) {
+        if (kind.equals("poisson")) {
+            return poisson(rate);
+        }
+        if (kind.equals("constant")) {
+            return constant(rate);
+        }
+        throw new IllegalArgumentException("Unknown arrival process " + kind);
+    }
+}
@@ -0,0 +1,350 @@
+/**
+ * AssignmentIndex.java keeps the candidate tasks of each worker for the probabilistic
+ * task assignment, so that a requesting worker can be served without scanning all the
+ * tasks. Normal tasks and golden tasks each follow a global order that is randomized
+ * once per run, and a worker is always offered the first eligible task in that order.
+ * Normal tasks are found through a cursor on the pending tasks of each worker. Golden
+ * tasks are found among the golden tasks that are still open, i.e., whose exposure plus
+ * number of unreliable assigned workers is below K. The index is built for a single run.
+ * Workers may be served concurrently as long as the requests of each worker are serialized
+ * and nothing else changes the tasks meanwhile. A task is checked and assigned under the
+ * lock of its stripe, so that a golden task is never assigned once it is closed, and the
+ * open golden tasks are kept in atomic words.
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class AssignmentIndex {
+    private static final int STRIPES = 256; // number of lock stripes over tasks
+
+    private double delta; // reliability threshold for marking reliable workers
+    private int K; // number of workers per task
+
+    private Task[] normal; // normal tasks in the global order
+    private int[] rank; // position of each normal task in the global order
+    private Task[][] pending; // normal tasks in the original data of each independent worker in the global order (null for Sybil workers)
+    private int[] cursor; // position of each worker in her pending normal tasks
+
+    private ArrayList<Task> golden; // golden tasks in the global order (promoted golden tasks are appended)
+    private int[] golden_rank; // position of each golden task in the global order (-1 means not golden)
+    private AtomicLongArray open; // bits of the positions of golden tasks whose exposure is below K
+    private ArrayList<ArrayList<Task>> candidates; // golden tasks in the original data of each independent worker in the global order
+    private int[] unreliable; // number of assigned workers with reliability below delta on each task
+    private Object[] locks; // locks of the stripes of tasks, held while a task is checked and assigned
+
+    /* initialization */
+    public AssignmentIndex(Collection<Task> normal_tasks, Collection<Task> golden_tasks, Collection<Worker> workers, double delta, int K, Random rand) {
+        this.delta = delta;
+        this.K = K;
+
+        int task_num = 0;
+        for (Task task : normal_tasks) {
+            task_num = Math.max(task_num, task.getIndex() + 1);
+        }
+        for (Task task : golden_tasks) {
+            task_num = Math.max(task_num, task.getIndex() + 1);
+        }
+        int worker_num = 0;
+        for (Worker worker : workers) {
+            worker_num = Math.max(worker_num, worker.getIndex() + 1);
+        }
+
+        // randomize the global order of normal tasks and golden tasks
+        normal = shuffle(normal_tasks, task_num, rand);
+        rank = new int[task_num];
+        for (int i = 0; i < normal.length; i++) {
+            rank[normal[i].getIndex()] = i;
+        }
+        golden = new ArrayList<Task>(Arrays.asList(shuffle(golden_tasks, task_num, rand)));
+        golden_rank = new int[task_num];
+        Arrays.fill(golden_rank, -1);
+        for (int i = 0; i < golden.size(); i++) {
+            golden_rank[golden.get(i).getIndex()] = i;
+        }
+        // a task takes at most one position in the golden order
+        open = new AtomicLongArray((task_num + 63) >>> 6);
+        unreliable = new int[task_num];
+        locks = new Object[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+
+        pending = new Task[worker_num][];
+        cursor = new int[worker_num];
+        candidates = new ArrayList<ArrayList<Task>>(worker_num);
+        for (int i = 0; i < worker_num; i++) {
+            candidates.add(new ArrayList<Task>());
+        }
+        for (Worker worker : workers) {
+            if (worker.getAttackerID() != -1) {
+                continue;
+            }
+            // candidate tasks of an independent worker are those she labeled in the original data
+            Task[] tasks = new Task[worker.getPairNum()];
+            int count = 0;
+            for (int i = 0; i < worker.getPairNum(); i++) {
+                Task task = worker.getPairTask(i);
+                if (task.isNormal()) {
+                    tasks[count++] = task;
+                } else if (golden_rank[task.getIndex()] != -1) {
+                    candidates.get(worker.getIndex()).add(task);
+                }
+            }
+            tasks = Arrays.copyOf(tasks, count);
+            Arrays.sort(tasks, (a, b) -> Integer.compare(rank[a.getIndex()], rank[b.getIndex()]));
+            pending[worker.getIndex()] = tasks;
+            candidates.get(worker.getIndex()).sort((a, b) -> Integer.compare(golden_rank[a.getIndex()], golden_rank[b.getIndex()]));
+        }
+
+        for (Task task : golden) {
+            refresh(task);
+        }
+    }
+
+    /* return the tasks ordered by their dense ordinal and then randomly shuffled */
+    private static Task[] shuffle(Collection<Task> tasks, int task_num, Random rand) {
+        Task[] ordered = new Task[task_num];
+        for (Task task : tasks) {
+            ordered[task.getIndex()] = task;
+        }
+        int count = 0;
+        for (Task task : ordered) {
+            if (task != null) {
+                ordered[count++] = task;
+            }
+        }
+        ordered = Arrays.copyOf(ordered, count);
+        List<Task> list = Arrays.asList(ordered);
+        Collections.shuffle(list, rand);
+        return ordered;
+    }
+
+    /* register a normal task that has been promoted to a golden task */
+    public void promote(Task task) {
+        golden_rank[task.getIndex()] = golden.size();
+        golden.add(task);
+        // the promoted task comes last in the global order, so candidate lists stay ordered
+        for (int i = 0; i < task.getWorkerNum(); i++) {
+            Worker worker = task.getWorker(i);
+            if (worker.getAttackerID() == -1 && !worker.isAssigned(task)) {
+                candidates.get(worker.getIndex()).add(task);
+            }
+        }
+        refresh(task);
+    }
+
+    /* update whether a golden task is open for assignment */
+    private void refresh(Task task) {
+        int g = golden_rank[task.getIndex()];
+        if (g != -1) {
+            boolean is_open = task.getExpose() + unreliable[task.getIndex()] < K;
+            // other bits of the word may be flipped concurrently by the tasks of other stripes
+            long word = open.get(g >>> 6);
+            while ((word & 1L << g) != 0 != is_open && !open.compareAndSet(g >>> 6, word, word ^ 1L << g)) {
+                word = open.get(g >>> 6);
+            }
+        }
+    }
+
+    /* return whether the golden task at a position is open */
+    private boolean isOpen(int g) {
+        return (open.get(g >>> 6) & 1L << g) != 0;
+    }
+
+    /* return the first position of an open golden task from a position (-1 if there is none) */
+    private int nextOpen(int from) {
+        int end = (golden.size() + 63) >>> 6; // number of words holding the positions of golden tasks
+        int i = from >>> 6;
+        if (i >= end) {
+            return -1;
+        }
+        long word = open.get(i) & -1L << from;
+        while (word == 0) {
+            if (++i == end) {
+                return -1;
+            }
+            word = open.get(i);
+        }
+        return (i << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /* return the lock of the stripe of a task */
+    private Object lock(Task task) {
+        return locks[task.getIndex() & (STRIPES - 1)];
+    }
+
+    /* assign the first open golden task in the global order that the worker has not labeled (null if there is none) */
+    public Task assignGolden(Worker worker) {
+        if (worker.getAttackerID() == -1) {
+            // an independent worker can only label golden tasks in her original data
+            ArrayList<Task> tasks = candidates.get(worker.getIndex());
+            int i = 0;
+            while (i < tasks.size()) {
+                Task task = tasks.get(i);
+                // a closed task is passed over without taking its lock
+                if (isOpen(golden_rank[task.getIndex()])) {
+                    synchronized (lock(task)) {
+                        if (worker.isAssigned(task)) {
+                            tasks.remove(i);
+                            continue;
+                        }
+                        if (isOpen(golden_rank[task.getIndex()])) {
+                            assign(worker, task);
+                            return task;
+                        }
+                    }
+                }
+                i++;
+            }
+            return null;
+        }
+        for (int g = nextOpen(0); g >= 0; g = nextOpen(g + 1)) {
+            Task task = golden.get(g);
+            // the task may have been closed by another worker since it was found open
+            synchronized (lock(task)) {
+                if (isOpen(g) && !worker.isAssigned(task)) {
+                    assign(worker, task);
+                    return task;
+                }
+            }
+        }
+        return null;
+    }
+
+    /* assign the first normal task in the global order that can be assigned to the worker (null if there is none) */
+    public Task assignNormal(Worker worker) {
+        int w = worker.getIndex();
+        Task[] tasks = pending[w] == null ? normal : pending[w];
+        // workers keep their assigned tasks until being banned, so the cursor never moves back
+        int i = cursor[w];
+        for (; i < tasks.length; i++) {
+            synchronized (lock(tasks[i])) {
+                if (!worker.isAssigned(tasks[i])) {
+                    cursor[w] = i;
+                    assign(worker, tasks[i]);
+                    return tasks[i];
+                }
+            }
+        }
+        cursor[w] = i;
+        return null;
+    }
+
+    /* assign a task to a worker under the lock of the task */
+    private void assign(Worker worker, Task task) {
+        task.assign(worker);
+        if (worker.getR() < delta) {
+            unreliable[task.getIndex()]++;
+            refresh(task);
+        }
+    }
+
+    /* write the global orders, the cursors and the candidate golden tasks of workers into a checkpoint */
+    public void save(DataOutputStream out) throws IOException {
+        out.writeInt(normal.length);
+        for (Task task : normal) {
+            out.writeInt(task.getIndex());
+        }
+        for (int w = 0; w < cursor.length; w++) {
+            out.writeInt(cursor[w]);
+        }
+        out.writeInt(golden.size());
+        for (Task task : golden) {
+            out.writeInt(task.getIndex());
+        }
+        for (ArrayList<Task> tasks : candidates) {
+            out.writeInt(tasks.size());
+            for (Task task : tasks) {
+                out.writeInt(task.getIndex());
+            }
+        }
+    }
+
+    /* restore the index from a checkpoint after the tasks and workers are restored, where the number of unreliable
+       workers on each task follows from the current reliability threshold */
+    public void restore(DataInputStream in) throws IOException {
+        Task[] tasks_of = new Task[rank.length];
+        for (Task task : normal) {
+            tasks_of[task.getIndex()] = task;
+        }
+        for (Task task : golden) {
+            tasks_of[task.getIndex()] = task;
+        }
+
+        int normal_num = in.readInt();
+        for (int i = 0; i < normal_num; i++) {
+            normal[i] = tasks_of[in.readInt()];
+            rank[normal[i].getIndex()] = i;
+        }
+        for (Task[] tasks : pending) {
+            if (tasks != null) {
+                Arrays.sort(tasks, (a, b) -> Integer.compare(rank[a.getIndex()], rank[b.getIndex()]));
+            }
+        }
+        for (int w = 0; w < cursor.length; w++) {
+            cursor[w] = in.readInt();
+        }
+        int golden_num = in.readInt();
+        golden.clear();
+        Arrays.fill(golden_rank, -1);
+        for (int i = 0; i < golden_num; i++) {
+            Task task = tasks_of[in.readInt()];
+            golden_rank[task.getIndex()] = i;
+            golden.add(task);
+        }
+        for (ArrayList<Task> tasks : candidates) {
+            tasks.clear();
+            int num = in.readInt();
+            for (int i = 0; i < num; i++) {
+                tasks.add(tasks_of[in.readInt()]);
+            }
+        }
+
+        open = new AtomicLongArray(open.length());
+        for (Task task : tasks_of) {
+            if (task != null) {
+                unreliable[task.getIndex()] = 0;
+                for (int i = 0; i < task.getAssignedNum(); i++) {
+                    if (task.getAssignedWorker(i).getR() < delta) {
+                        unreliable[task.getIndex()]++;
+                    }
+                }
+            }
+        }
+        for (Task task : golden) {
+            refresh(task);
+        }
+    }
+
+    /* update the index after the label of a banned worker is removed from a task */
+    public void onRemove(Worker worker, Task task) {
+        if (worker.getR() < delta) {
+            unreliable[task.getIndex()]--;
+        }
+        refresh(task);
+    }
+
+    /* update the index after the reliability score of a worker changes from old_r */
+    public void onReliability(Worker worker, double old_r) {
+        boolean was_unreliable = old_r < delta;
+        boolean is_unreliable = worker.getR() < delta;
+        if (was_unreliable == is_unreliable) {
+            return;
+        }
+        int change = is_unreliable ? 1 : -1;
+        for (int i = 0; i < worker.getLabeledNum(); i++) {
+            Task task = worker.getLabeledTask(i);
+            unreliable[task.getIndex()] += change;
+            refresh(task);
+        }
+    }
+}
@@ -5,27 +5,32 @@
  * counting the observation of tasks so that a golden task could identified if the
  * task has been assigned to more than K Sybil workers under his control. Once a golden
  * task is identified, the attacker would honestly provide a new label for Sybil workers
- * to share, where the new label has theta probability to be the true label.
+ * to share, where the new label has theta probability to be the true label. The randomized
+ * labels are either given for all tasks, or drawn from a seed when a task is first labeled.
  */
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.SplittableRandom;
 
 public class Attacker {
     private ArrayList<Worker> sybil_workers; // Sybil workers controlled by the attacker
-    private Map<Task, Integer> task_labels; // randomized label on each task
-    private Map<Task, Integer> task_count; // observation times of each task
+    private int[] task_labels; // randomized label on each task (indexed by task ordinal, -1 means not drawn yet)
+    private long label_seed; // seed of the randomized labels that are not drawn yet
+    private int[] task_count; // observation times of each task (indexed by task ordinal)
     private int attacker_id; // attacker ID
     private int K; // number of workers for each task
     private int L; // label size;
 
     /* initialization */
-    public Attacker(int attacker_id, int K, int L) {
+    public Attacker(int attacker_id, int K, int L, int task_num) {
         sybil_workers = new ArrayList<Worker>();
-        task_labels = new HashMap<Task, Integer>();
-        task_count = new HashMap<Task, Integer>();
+        task_labels = new int[task_num];
+        task_count = new int[task_num];
         this.attacker_id = attacker_id;
         this.K = K;
         this.L = L;
@@ -42,45 +47,76 @@ public class Attacker {
     }
 
     /* set a randomized label on a task */
-    public void setTaskLabel(Task task, Integer label) {
-        task_labels.put(task, label);
+    public void setTaskLabel(Task task, int label) {
+        task_labels[task.getIndex()] = label;
+    }
+
+    /* draw the randomized label on each task from a seed when the task is first labeled */
+    public void randomize(long seed) {
+        label_seed = seed;
+        Arrays.fill(task_labels, -1);
     }
 
     /* return the label on a task */
     public int getTaskLabel(Task task) {
-        return task_labels.get(task);
+        int t = task.getIndex();
+        if (task_labels[t] == -1) {
+            // the label only depends on the seed and the task, so it does not matter when it is drawn
+            task_labels[t] = new SplittableRandom(label_seed + t).nextInt(L);
+        }
+        return task_labels[t];
     }
 
     /* update the observation times of a task */
-    public void observe(Task task) {
-        if (task_count.containsKey(task)) {
-            int count = task_count.get(task);
-            count++;
-            task_count.put(task, count);
-            // label the task honestly if the task is observed for more than K times
-            if (count == K + 1) {
-                Random rand = new Random();
-                if (rand.nextDouble() <= 0.7) {
-                    setTaskLabel(task, task.getTrueLabel());
-                } else {
-                    int label = rand.nextInt(L);
-                    while (label == task.getTrueLabel()) {
-                        label = rand.nextInt(L);
-                    }
-                    setTaskLabel(task, label);
+    public void observe(Task task, Random rand) {
+        int t = task.getIndex();
+        task_count[t]++;
+        // label the task honestly if the task is observed for more than K times
+        if (task_count[t] == K + 1) {
+            if (rand.nextDouble() <= 0.7) {
+                setTaskLabel(task, task.getTrueLabel());
+            } else {
+                int label = rand.nextInt(L);
+                while (label == task.getTrueLabel()) {
+                    label = rand.nextInt(L);
                 }
+                setTaskLabel(task, label);
             }
-        } else {
-            task_count.put(task, 1);
         }
     }
 
     /* return the observation times of a task */
     public int getCount(Task task) {
-        if (task_count.containsKey(task)) {
-            return task_count.get(task);
+        return task_count[task.getIndex()];
+    }
+
+    /* write the observation times of the observed tasks and their labels into a checkpoint (the labels of the other
+       tasks are as given or drawn from the seed) */
+    public void save(DataOutputStream out) throws IOException {
+        int observed_num = 0;
+        for (int count : task_count) {
+            if (count > 0) {
+                observed_num++;
+            }
+        }
+        out.writeInt(observed_num);
+        for (int t = 0; t < task_count.length; t++) {
+            if (task_count[t] > 0) {
+                out.writeInt(t);
+                out.writeInt(task_count[t]);
+                out.writeInt(task_labels[t]);
+            }
+        }
+    }
+
+    /* restore the observation times of the observed tasks and their labels from a checkpoint */
+    public void restore(DataInputStream in) throws IOException {
+        int observed_num = in.readInt();
+        for (int i = 0; i < observed_num; i++) {
+            int t = in.readInt();
+            task_count[t] = in.readInt();
+            task_labels[t] = in.readInt();
         }
-        return 0;
     }
 
     /* return the attacker ID */
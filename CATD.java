@@ -0,0 +1,62 @@
+/**
+ * CATD.java provides the confidence-aware truth discovery (CATD) for comparison with
+ * extended truth discovery. A pass starts from the majority votes of the labels, and then
+ * iterates the weighted votes of tasks and the weights of workers, where the weight of a
+ * worker is the chi-squared quantile of her number of labels over the sum of her errors
+ * (the chi-squared weighting of earlier versions). Unlike extended truth discovery, the
+ * votes do not take the Sybil scores of workers into consideration.
+ */
+
+import java.util.Arrays;
+import java.util.Collection;
+
+public class CATD implements TruthDiscovery {
+    private static final int MAX_ITERATION = 1000; // maximum number of iterations of a pass
+    private static final double ALPHA = 0.05; // significance level of the chi-squared weight
+    private static final ChiSquaredQuantiles QUANTILES = ChiSquaredQuantiles.of(1 - ALPHA / 2); // chi-squared quantiles of the weight
+
+    private int L; // label size
+    private int iteration_num; // number of iterations of the latest pass
+
+    /* initialization */
+    public CATD(int L) {
+        this.L = L;
+    }
+
+    /* aggregate the current labels of tasks by workers in a pass */
+    public void process(Collection<Task> tasks, Collection<Worker> workers) {
+        SparseLabels labels = new SparseLabels(tasks, workers, L);
+        process(labels);
+        labels.apply();
+    }
+
+    /* iteratively run CATD */
+    public void process(SparseLabels labels) {
+        int[] aggregated = labels.getAggregated();
+        double[] weights = labels.getWeights();
+        // outside voters keep their weights
+        Arrays.fill(weights, 0, labels.getWorkerNum(), 1);
+
+        int iteration = 0;
+        while (iteration < MAX_ITERATION) {
+            iteration++;
+            // the first iteration always estimates the weights from the majority votes
+            if (labels.vote(weights, aggregated) == 0 && iteration > 1) {
+                break;
+            }
+            for (int w = 0; w < labels.getWorkerNum(); w++) {
+                int label_num = labels.workerEnd(w) - labels.workerStart(w);
+                if (label_num > 0) {
+                    // a label that differs from the aggregated label has a squared distance of 2 between the label vectors
+                    weights[w] = QUANTILES.get(label_num) / (2.0 * labels.errors(w, aggregated));
+                }
+            }
+        }
+        iteration_num = iteration;
+    }
+
+    /* return the number of iterations of the latest pass */
+    public int getIterationNum() {
+        return iteration_num;
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Checkpoint.java provides the binary checkpoint of a run that replays its requesting
+ * order, so that a run can be resumed after the process stops, and several continuations
+ * can be forked from a common prefix. A checkpoint holds the run state between two requests:
+ * the position in the requesting order, the running time so far, the state of the random
+ * number generator, the observations of the attackers, and the state of the engine, i.e.,
+ * the assignments and current labels, the counters, scores and bans of workers, the votes,
+ * aggregated labels and roles of tasks (with the promoted golden tasks), the global orders
+ * and candidate tasks of the assignment index, the frontier of promotion, and the kind of
+ * truth discovery with its kept state, which only a run with the same kind restores. A
+ * resumed run produces the same results as the run that wrote the checkpoint would have
+ * produced, except for the latencies of calls, which only cover the calls after the
+ * resumption. A background batch in progress is applied before the checkpoint is written.
+ * The state that follows from the dataset, the attack and the requesting order is not
+ * written but checked against a fingerprint, so a checkpoint can only be resumed by a run
+ * on the same data.
+ *
+ * All values are big-endian. The file starts with MAGIC and VERSION as ints, the position
+ * as an int and the running time in nanoseconds as a long, followed by the part of the run
+ * (task number, worker number and request number as ints, the fingerprint and the state of
+ * the random number generator as longs, and the observations of each attacker) and the part
+ * of the engine (see TDSSAEngine.save).
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+
+public class Checkpoint {
+    /* binary format */
+    public static final int MAGIC = 0x54444350; // first int of a checkpoint
+    public static final int VERSION = 2; // version of the binary format
+
+    private int position; // position in the requesting order of the next request
+    private long elapsed; // running time of the run before the checkpoint in nanoseconds
+
+    /* initialization */
+    private Checkpoint(int position, long elapsed) {
+        this.position = position;
+        this.elapsed = elapsed;
+    }
+
+    /* return the position in the requesting order of the next request */
+    public int getPosition() {
+        return position;
+    }
+
+    /* return the running time of the run before the checkpoint in nanoseconds */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /* write the state of a run and its engine before a position of the requesting order, replacing the file at once */
+    public static void write(String path, TDSSA tdssa, TDSSAEngine engine, int position, long elapsed) throws IOException {
+        File file = new File(path).getAbsoluteFile();
+        Path staging = Files.createTempFile(file.getParentFile().toPath(), file.getName() + ".", ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(staging)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(position);
+            out.writeLong(elapsed);
+            tdssa.save(out);
+            engine.save(out);
+            out.close();
+            // a reader sees either the previous checkpoint or this one
+            Files.move(staging, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(staging);
+        }
+    }
+
+    /* restore the state of a run and its engine opened on the same data, and return the checkpoint */
+    public static Checkpoint read(String path, TDSSA tdssa, TDSSAEngine engine) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalStateException("Unknown format of checkpoint " + path);
+            }
+            Checkpoint checkpoint = new Checkpoint(in.readInt(), in.readLong());
+            if (!tdssa.restore(in)) {
+                throw new IllegalStateException("Checkpoint " + path + " does not match the run");
+            }
+            engine.restore(in);
+            return checkpoint;
+        } finally {
+            in.close();
+        }
+    }
+
+    /* write a set of bits as its number of words followed by the words */
+    public static void writeBits(DataOutputStream out, BitSet bits) throws IOException {
+        long[] words = bits.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    /* read a set of bits written by writeBits */
+    public static BitSet readBits(DataInputStream in) throws IOException {
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return BitSet.valueOf(words);
+    }
+}
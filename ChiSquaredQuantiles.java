@@ -0,0 +1,76 @@
+/**
+ * ChiSquaredQuantiles.java provides a shared cache of the quantiles of chi-squared
+ * distributions used in the weight estimation of extended truth discovery. The quantiles
+ * of a cumulative probability are kept in a table indexed by the degrees of freedom, which
+ * can be precomputed up to the largest number of labels of a worker. Lookups do not lock,
+ * and missing quantiles are computed and added under the lock of the table.
+ */
+
+import org.apache.commons.math3.distribution.ChiSquaredDistribution;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ChiSquaredQuantiles {
+    private static final ConcurrentHashMap<Double, ChiSquaredQuantiles> TABLES = new ConcurrentHashMap<Double, ChiSquaredQuantiles>(); // shared table of each cumulative probability
+
+    private final double p; // cumulative probability of the quantiles
+    private volatile double[] table; // quantile of each degree of freedom (NaN means not computed yet)
+
+    /* initialization */
+    private ChiSquaredQuantiles(double p) {
+        this.p = p;
+        table = new double[0];
+    }
+
+    /* return the shared table of quantiles of a cumulative probability */
+    public static ChiSquaredQuantiles of(double p) {
+        return TABLES.computeIfAbsent(p, ChiSquaredQuantiles::new);
+    }
+
+    /* return the quantile of the chi-squared distribution with df degrees of freedom */
+    public double get(int df) {
+        double[] quantiles = table;
+        if (df < quantiles.length && !Double.isNaN(quantiles[df])) {
+            return quantiles[df];
+        }
+        return compute(df);
+    }
+
+    /* compute the quantiles of all degrees of freedom up to max_df */
+    public synchronized void precompute(int max_df) {
+        double[] quantiles = grow(table, max_df + 1);
+        for (int df = 1; df <= max_df; df++) {
+            if (Double.isNaN(quantiles[df])) {
+                quantiles[df] = quantile(df);
+            }
+        }
+        table = quantiles;
+    }
+
+    /* compute a missing quantile and add it to the table */
+    private synchronized double compute(int df) {
+        double[] quantiles = table;
+        if (df < quantiles.length && !Double.isNaN(quantiles[df])) {
+            return quantiles[df];
+        }
+        // the published table is never modified, so a copy is filled and published instead
+        double[] quantiles_copy = grow(quantiles, df < quantiles.length ? quantiles.length : Math.max(df + 1, quantiles.length * 2));
+        quantiles_copy[df] = quantile(df);
+        table = quantiles_copy;
+        return quantiles_copy[df];
+    }
+
+    /* return a copy of the table with at least the given size, where new entries are NaN */
+    private static double[] grow(double[] quantiles, int size) {
+        double[] copy = Arrays.copyOf(quantiles, Math.max(size, quantiles.length));
+        Arrays.fill(copy, quantiles.length, copy.length, Double.NaN);
+        return copy;
+    }
+
+    /* compute the quantile of the chi-squared distribution with df degrees of freedom */
+    private double quantile(int df) {
+        // the distribution is only used for its inverse, so it needs no random generator
+        return new ChiSquaredDistribution(null, df).inverseCumulativeProbability(p);
+    }
+}
@@ -0,0 +1,473 @@
+/**
+ * Dataset.java provides the data shared by all runs of TDSSA on a dataset, i.e., the normal
+ * tasks with their true labels and rewards, the golden tasks with their true labels, the
+ * workers and their labels in the original data. The dataset is read once and is not
+ * modified afterwards, so that each run creates its own tasks and workers from it and
+ * runs can proceed in parallel. Tasks are identified by dense ordinals, where the normal
+ * tasks come first and the golden tasks follow. The dataset is loaded from the binary file
+ * "data.bin" written by Preprocess if it exists, and from the text files otherwise. If the
+ * runs are described by a seed in "runs.txt" instead of their own files, the attack and the
+ * requesting order of each run are generated from random numbers split from that seed.
+ *
+ * All values in data.bin are big-endian ints unless stated otherwise. The file starts with
+ * MAGIC, VERSION, M, N, L and K, followed by the normal section (task number n, the columns
+ * of task ID, true label and worker number of n tasks, and the columns of worker ID and label
+ * of all the labels), the golden section (golden task number g, the columns of ID and true
+ * label of g golden tasks, worker number w, the column of w worker IDs, and the columns of
+ * golden task ID and label of w * g labels), and the section of each run. The section of
+ * a run consists of the attack part (epsilon as a double, attacker number, and for each
+ * attacker the attacker ID, task number t, the columns of t task IDs and labels, Sybil worker
+ * number s and the column of s worker IDs) and the order part (request number and the
+ * column of requesting worker IDs). The file ends with the index of run sections (run
+ * number, and the starts of the attack part and the order part of each run as longs) and the
+ * start of the index as a long.
+ *
+ * The file is mapped section by section, i.e., the data up to the first run, the index, and
+ * the attack part and the order part of each run on their own, as a single mapping cannot
+ * exceed 2 GiB, so that the runs together may take any size. If data.bin exists but cannot
+ * be read, the dataset fails with an error instead of falling back to the text files.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+public class Dataset {
+    /* binary format */
+    public static final String BINARY = "data.bin"; // name of the binary file
+    public static final int MAGIC = 0x54445341; // first int of the binary file
+    public static final int VERSION = 1; // version of the binary format
+
+    /* seeded runs */
+    public static final String RUNS = "runs.txt"; // name of the file that describes seeded runs
+    public static final int ATTACK = 0; // random numbers for the attack of a run
+    public static final int ORDER = 1; // random numbers for the requesting order of a run
+
+    private String name; // name of the dataset
+    private String folder; // folder of the files of the dataset (the folder of its name unless cached)
+    private int L; // label size
+    private int K; // number of workers per task
+
+    private int normal_num; // number of normal tasks
+    private int task_num; // number of normal and golden tasks
+    private int[] task_ids; // ID of each task ordinal
+    private int[] true_labels; // true label of each task ordinal
+    private int[] task_rewards; // reward of each task ordinal
+    private int worker_num; // number of workers
+    private int[] worker_ids; // ID of each worker ordinal
+    private AnswerMatrix answers; // original labels of workers on tasks
+
+    private File binary; // binary file (null if the dataset is read from text files)
+    private long[] attack_offsets; // start of the attack part of each run in the binary file
+    private long[] order_offsets; // start of the order part of each run in the binary file
+    private long index_offset; // start of the index of run sections, i.e., the end of the last run section
+
+    private boolean seeded_runs; // whether the runs are generated from a seed instead of read from files
+    private double mu; // percentage of Sybil workers in seeded runs
+    private double epsilon; // probability for Sybil workers to deviate from sharing in seeded runs
+    private int lambda; // number of attackers in seeded runs
+    private long run_seed; // seed of all seeded runs
+
+    /* read the dataset */
+    public Dataset(String name) {
+        this(name, name);
+    }
+
+    /* initialization from the files in a folder, e.g. a cached preprocessing of the dataset */
+    public Dataset(String name, String folder) {
+        this.name = name;
+        this.folder = folder;
+        task_ids = new int[1024];
+        true_labels = new int[1024];
+        task_rewards = new int[1024];
+        worker_ids = new int[64];
+        answers = new AnswerMatrix();
+        Map<Integer, Integer> worker_ordinal = new HashMap<Integer, Integer>(); // ID to worker ordinal mapping
+        File file = new File(folder, BINARY);
+        if (file.exists()) {
+            binary = file;
+            readBinary(worker_ordinal);
+        } else {
+            readNormal(worker_ordinal);
+            readGolden(worker_ordinal);
+        }
+        answers.build(task_num, worker_num);
+        readRuns();
+
+        // precompute the chi-squared quantiles of worker weights up to the largest number of labels in the original data
+        int max_labeled = 0;
+        for (int w = 0; w < worker_num; w++) {
+            max_labeled = Math.max(max_labeled, answers.workerEnd(w) - answers.workerStart(w));
+        }
+        ExtendedTD.precompute(max_labeled);
+    }
+
+    /* read worker labels on normal tasks */
+    private void readNormal(Map<Integer, Integer> worker_ordinal) {
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(folder + "//input.txt"));
+            String line = reader.readLine();
+            String[] elements = line.split("\t");
+            L = Integer.parseInt(elements[2]);
+            K = Integer.parseInt(elements[3]);
+            line = reader.readLine();
+
+            //new
+            int c = 0; //record nums of task
+
+            while (line != null) {
+                elements = line.split("\t");
+                int task_id = Integer.parseInt(elements[0]);
+                int true_label = Integer.parseInt(elements[1]);
+                int worker_num = Integer.parseInt(elements[2]);
+                int t = addTask(task_id, true_label);
+
+                //new
+                task_rewards[t] = reward(c);
+
+                c++;
+
+                for (int i = 0; i < worker_num; i++) {
+                    int worker_id = Integer.parseInt(elements[2 * i + 3]);
+                    int answer = Integer.parseInt(elements[2 * i + 4]);
+                    if (!worker_ordinal.containsKey(worker_id)) {
+                        worker_ordinal.put(worker_id, addWorker(worker_id));
+                    }
+                    answers.addAnswer(t, worker_ordinal.get(worker_id), answer);
+                }
+                line = reader.readLine();
+            }
+            reader.close();
+            normal_num = task_num;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /* read worker labels on golden tasks */
+    private void readGolden(Map<Integer, Integer> worker_ordinal) {
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(folder + "//golden.txt"));
+            String line = reader.readLine();
+            int golden_num = Integer.parseInt(line);
+            line = reader.readLine();
+            String[] elements = line.split("\t");
+            Map<Integer, Integer> golden_ordinal = new HashMap<Integer, Integer>(); // ID to golden task ordinal mapping
+            for (int i = 0; i < golden_num; i++) {
+                int golden_id = Integer.parseInt(elements[i * 2]);
+                golden_ordinal.put(golden_id, addTask(golden_id, Integer.parseInt(elements[i * 2 + 1])));
+            }
+            line = reader.readLine();
+            while (line != null) {
+                elements = line.split("\t");
+                int worker_id = Integer.parseInt(elements[0]);
+                int w = worker_ordinal.get(worker_id);
+                for (int i = 0; i < golden_num; i++) {
+                    int golden_id = Integer.parseInt(elements[i * 2 + 1]);
+                    int answer = Integer.parseInt(elements[i * 2 + 2]);
+                    answers.addAnswer(golden_ordinal.get(golden_id), w, answer);
+                }
+                line = reader.readLine();
+            }
+            reader.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /* read the description of seeded runs if the runs are generated from a seed */
+    private void readRuns() {
+        File file = new File(folder + "//" + RUNS);
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            String[] elements = reader.readLine().split("\t");
+            mu = Double.parseDouble(elements[0]);
+            epsilon = Double.parseDouble(elements[1]);
+            lambda = Integer.parseInt(elements[2]);
+            run_seed = Long.parseLong(elements[3]);
+            reader.close();
+            seeded_runs = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /* return the reward of the cth normal task in the dataset (0 for datasets without rewards) */
+    private int reward(int c) {
+        //NLP
+        if (name.equals("NLP")) {
+            if (c <= 23) {
+                return 5;
+            } else if (c <= 159) {
+                return 13;
+            } else if (c <= 500) {
+                return 24;
+            } else if (c <= 841) {
+                return 38;
+            } else if (c <= 977) {
+                return 55;
+            } else {
+                return 75;
+            }
+        } else if (name.equals("DOG")) {
+            //DOG
+            if (c <= 19) {
+                return 5;
+            } else if (c <= 129) {
+                return 13;
+            } else if (c <= 404) {
+                return 24;
+            } else if (c <= 679) {
+                return 38;
+            } else if (c <= 789) {
+                return 55;
+            } else {
+                return 75;
+            }
+        }
+        return 0;
+    }
+
+    /* map a section of the binary file into memory, as a single mapping cannot exceed 2 GiB */
+    private ByteBuffer map(FileChannel channel, long start, long end) throws IOException {
+        if (start < 0 || end > channel.size() || start > end) {
+            throw new IllegalStateException(binary + " is truncated: its section at " + start + " ends at " + end + ", but the file has "
+                    + channel.size() + " bytes");
+        }
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IllegalStateException("A section of " + binary + " has " + (end - start) + " bytes, more than a mapping can hold");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    }
+
+    /* read worker labels on normal tasks and golden tasks, and the index of run sections from the binary file */
+    private void readBinary(Map<Integer, Integer> worker_ordinal) {
+        try (FileChannel channel = FileChannel.open(binary.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = map(channel, 0, 8);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IllegalStateException(binary + " has an unknown format (delete it to read the text files)");
+            }
+
+            // index of run sections
+            index_offset = map(channel, channel.size() - 8, channel.size()).getLong(0);
+            ByteBuffer index = map(channel, index_offset, channel.size() - 8);
+            int run_num = index.getInt(0);
+            attack_offsets = new long[run_num];
+            order_offsets = new long[run_num];
+            for (int r = 0; r < run_num; r++) {
+                attack_offsets[r] = index.getLong(4 + 16 * r);
+                order_offsets[r] = index.getLong(12 + 16 * r);
+            }
+            readSections(map(channel, 0, run_num > 0 ? attack_offsets[0] : index_offset), worker_ordinal);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read " + binary, e);
+        }
+    }
+
+    /* read worker labels on normal tasks and golden tasks from the data of the binary file before the first run */
+    private void readSections(ByteBuffer in, Map<Integer, Integer> worker_ordinal) {
+        in.position(16);
+        L = in.getInt();
+        K = in.getInt();
+
+        // normal section
+        int n = in.getInt();
+        int ids = in.position(); // start of the column of task IDs
+        int truths = ids + 4 * n; // start of the column of true labels
+        int nums = truths + 4 * n; // start of the column of worker numbers
+        int label_num = 0;
+        for (int i = 0; i < n; i++) {
+            label_num += in.getInt(nums + 4 * i);
+        }
+        int workers = nums + 4 * n; // start of the column of worker IDs
+        int labels = workers + 4 * label_num; // start of the column of labels
+        int pos = 0;
+        for (int i = 0; i < n; i++) {
+            int t = addTask(in.getInt(ids + 4 * i), in.getInt(truths + 4 * i));
+            task_rewards[t] = reward(i);
+            int num = in.getInt(nums + 4 * i);
+            for (int j = 0; j < num; j++, pos++) {
+                int worker_id = in.getInt(workers + 4 * pos);
+                Integer w = worker_ordinal.get(worker_id);
+                if (w == null) {
+                    w = addWorker(worker_id);
+                    worker_ordinal.put(worker_id, w);
+                }
+                answers.addAnswer(t, w, in.getInt(labels + 4 * pos));
+            }
+        }
+        normal_num = task_num;
+
+        // golden section
+        in.position(labels + 4 * label_num);
+        int golden_num = in.getInt();
+        ids = in.position();
+        truths = ids + 4 * golden_num;
+        Map<Integer, Integer> golden_ordinal = new HashMap<Integer, Integer>(); // ID to golden task ordinal mapping
+        for (int i = 0; i < golden_num; i++) {
+            int golden_id = in.getInt(ids + 4 * i);
+            golden_ordinal.put(golden_id, addTask(golden_id, in.getInt(truths + 4 * i)));
+        }
+        in.position(truths + 4 * golden_num);
+        int golden_workers = in.getInt();
+        workers = in.position();
+        int goldens = workers + 4 * golden_workers; // start of the column of golden task IDs
+        labels = goldens + 4 * golden_workers * golden_num;
+        for (int i = 0; i < golden_workers; i++) {
+            int w = worker_ordinal.get(in.getInt(workers + 4 * i));
+            for (int j = 0; j < golden_num; j++) {
+                int k = i * golden_num + j;
+                answers.addAnswer(golden_ordinal.get(in.getInt(goldens + 4 * k)), w, in.getInt(labels + 4 * k));
+            }
+        }
+    }
+
+    /* return the attack part of the rth run in the binary file (null if the dataset is read from text files) */
+    public ByteBuffer getAttack(int r) {
+        return mapRun(r, ATTACK);
+    }
+
+    /* return the order part of the rth run in the binary file (null if the dataset is read from text files) */
+    public ByteBuffer getOrder(int r) {
+        return mapRun(r, ORDER);
+    }
+
+    /* map a part (ATTACK or ORDER) of the rth run in the binary file (null if the dataset is read from text files) */
+    private ByteBuffer mapRun(int r, int part) {
+        if (binary == null) {
+            return null;
+        }
+        if (r >= attack_offsets.length) {
+            throw new IllegalStateException(binary + " only has " + attack_offsets.length + " runs, but run " + (r + 1) + " is read");
+        }
+        long start = part == ATTACK ? attack_offsets[r] : order_offsets[r];
+        long end = part == ATTACK ? order_offsets[r] : r + 1 < attack_offsets.length ? attack_offsets[r + 1] : index_offset;
+        try (FileChannel channel = FileChannel.open(binary.toPath(), StandardOpenOption.READ)) {
+            return map(channel, start, end);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read run " + (r + 1) + " from " + binary, e);
+        }
+    }
+
+    /* check whether the runs are generated from a seed */
+    public boolean hasSeededRuns() {
+        return seeded_runs;
+    }
+
+    /* return the percentage of Sybil workers in seeded runs */
+    public double getMu() {
+        return mu;
+    }
+
+    /* return the probability for Sybil workers to deviate from sharing in seeded runs */
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    /* return the number of attackers in seeded runs */
+    public int getLambda() {
+        return lambda;
+    }
+
+    /* return the random numbers for a part (ATTACK or ORDER) of the rth seeded run */
+    public SplittableRandom getRunRandom(int r, int part) {
+        // each run has its own seed, and each part of a run takes its own split
+        SplittableRandom rand = new SplittableRandom(run_seed ^ (r * 0x9E3779B97F4A7C15L));
+        for (int i = 0; i < part; i++) {
+            rand.split();
+        }
+        return rand.split();
+    }
+
+    /* add a task and return its ordinal */
+    private int addTask(int task_id, int true_label) {
+        if (task_num == task_ids.length) {
+            task_ids = Arrays.copyOf(task_ids, task_num * 2);
+            true_labels = Arrays.copyOf(true_labels, task_num * 2);
+            task_rewards = Arrays.copyOf(task_rewards, task_num * 2);
+        }
+        task_ids[task_num] = task_id;
+        true_labels[task_num] = true_label;
+        return task_num++;
+    }
+
+    /* add a worker and return her ordinal */
+    private int addWorker(int worker_id) {
+        if (worker_num == worker_ids.length) {
+            worker_ids = Arrays.copyOf(worker_ids, worker_num * 2);
+        }
+        worker_ids[worker_num] = worker_id;
+        return worker_num++;
+    }
+
+    /* return the name of the dataset */
+    public String getName() {
+        return name;
+    }
+
+    /* return the folder of the files of the dataset */
+    public String getFolder() {
+        return folder;
+    }
+
+    /* return the label size */
+    public int getL() {
+        return L;
+    }
+
+    /* return the number of workers per task */
+    public int getK() {
+        return K;
+    }
+
+    /* return the number of normal and golden tasks */
+    public int getTaskNum() {
+        return task_num;
+    }
+
+    /* check whether a task ordinal is a golden task */
+    public boolean isGolden(int t) {
+        return t >= normal_num;
+    }
+
+    /* return the ID of a task ordinal */
+    public int getTaskId(int t) {
+        return task_ids[t];
+    }
+
+    /* return the true label of a task ordinal */
+    public int getTrueLabel(int t) {
+        return true_labels[t];
+    }
+
+    /* return the reward of a task ordinal */
+    public int getTaskReward(int t) {
+        return task_rewards[t];
+    }
+
+    /* return the number of workers */
+    public int getWorkerNum() {
+        return worker_num;
+    }
+
+    /* return the ID of a worker ordinal */
+    public int getWorkerId(int w) {
+        return worker_ids[w];
+    }
+
+    /* return the original labels of workers on tasks */
+    public AnswerMatrix getAnswers() {
+        return answers;
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * DawidSkene.java provides the Dawid-Skene model for comparison with extended truth
+ * discovery. Each worker has a confusion matrix, i.e., the probability of each label
+ * given each true label, and the true labels have prior probabilities. A pass starts from
+ * the posterior of each task given by the fractions of its majority votes, and then runs
+ * expectation maximization: the priors and the confusion matrices are estimated from the
+ * posteriors (with a small pseudo-count in each entry, so that no probability is 0), and the
+ * posteriors are computed from them in logarithms, until the labels with the highest
+ * posteriors no longer change. The weight of a worker is her estimated accuracy, i.e., the
+ * probability that her label is the true label.
+ */
+
+import java.util.Collection;
+
+public class DawidSkene implements TruthDiscovery {
+    private static final int MAX_ITERATION = 1000; // maximum number of iterations of a pass
+    private static final double PSEUDO_COUNT = 0.01; // pseudo-count of each entry of the priors and the confusion matrices
+
+    private int L; // label size
+    private int iteration_num; // number of iterations of the latest pass
+
+    /* initialization */
+    public DawidSkene(int L) {
+        this.L = L;
+    }
+
+    /* aggregate the current labels of tasks by workers in a pass */
+    public void process(Collection<Task> tasks, Collection<Worker> workers) {
+        SparseLabels labels = new SparseLabels(tasks, workers, L);
+        process(labels);
+        labels.apply();
+    }
+
+    /* run expectation maximization of the Dawid-Skene model */
+    public void process(SparseLabels labels) {
+        int task_num = labels.getTaskNum();
+        int worker_num = labels.getWorkerNum();
+        int[] aggregated = labels.getAggregated();
+        double[] posterior = new double[task_num * L]; // posterior of each true label of each task
+        double[] prior = new double[L]; // logarithm of the prior of each true label
+        double[] confusion = new double[worker_num * L * L]; // logarithm of the probability of each label given each true label of each worker
+        double[] scores = new double[L]; // logarithm of the unnormalized posteriors of a task
+
+        // the initial posteriors are the fractions of the majority votes, where outside voters have no confusion matrix
+        for (int t = 0; t < task_num; t++) {
+            int label_num = 0;
+            for (int i = labels.taskStart(t); i < labels.taskEnd(t); i++) {
+                if (labels.taskWorker(i) < worker_num) {
+                    label_num++;
+                }
+            }
+            for (int i = labels.taskStart(t); i < labels.taskEnd(t); i++) {
+                if (labels.taskWorker(i) < worker_num) {
+                    posterior[t * L + labels.taskLabel(i)] += 1.0 / label_num;
+                }
+            }
+            if (label_num == 0) {
+                for (int k = 0; k < L; k++) {
+                    posterior[t * L + k] = 1.0 / L;
+                }
+            }
+        }
+
+        int iteration = 0;
+        while (iteration < MAX_ITERATION) {
+            iteration++;
+            // maximization: the priors and the confusion matrices from the posteriors
+            for (int k = 0; k < L; k++) {
+                prior[k] = PSEUDO_COUNT;
+            }
+            for (int t = 0; t < task_num; t++) {
+                for (int k = 0; k < L; k++) {
+                    prior[k] += posterior[t * L + k];
+                }
+            }
+            for (int k = 0; k < L; k++) {
+                prior[k] = Math.log(prior[k] / (task_num + L * PSEUDO_COUNT));
+            }
+            for (int w = 0; w < worker_num; w++) {
+                int base = w * L * L;
+                for (int e = 0; e < L * L; e++) {
+                    confusion[base + e] = PSEUDO_COUNT;
+                }
+                for (int i = labels.workerStart(w); i < labels.workerEnd(w); i++) {
+                    int t = labels.workerTask(i);
+                    int label = labels.workerLabel(i);
+                    for (int k = 0; k < L; k++) {
+                        confusion[base + k * L + label] += posterior[t * L + k];
+                    }
+                }
+                for (int k = 0; k < L; k++) {
+                    double sum = 0;
+                    for (int l = 0; l < L; l++) {
+                        sum += confusion[base + k * L + l];
+                    }
+                    for (int l = 0; l < L; l++) {
+                        confusion[base + k * L + l] = Math.log(confusion[base + k * L + l] / sum);
+                    }
+                }
+            }
+
+            // expectation: the posteriors from the priors and the confusion matrices
+            int difference = 0;
+            for (int t = 0; t < task_num; t++) {
+                for (int k = 0; k < L; k++) {
+                    scores[k] = prior[k];
+                }
+                for (int i = labels.taskStart(t); i < labels.taskEnd(t); i++) {
+                    if (labels.taskWorker(i) >= worker_num) {
+                        continue;
+                    }
+                    int base = labels.taskWorker(i) * L * L + labels.taskLabel(i);
+                    for (int k = 0; k < L; k++) {
+                        scores[k] += confusion[base + k * L];
+                    }
+                }
+                int label = 0;
+                for (int k = 1; k < L; k++) {
+                    if (scores[k] > scores[label]) {
+                        label = k;
+                    }
+                }
+                double max_score = scores[label];
+                double sum = 0;
+                for (int k = 0; k < L; k++) {
+                    scores[k] = Math.exp(scores[k] - max_score);
+                    sum += scores[k];
+                }
+                for (int k = 0; k < L; k++) {
+                    posterior[t * L + k] = scores[k] / sum;
+                }
+                if (label != aggregated[t]) {
+                    aggregated[t] = label;
+                    difference++;
+                }
+            }
+            // the first iteration always re-estimates the model from the posteriors it computed
+            if (difference == 0 && iteration > 1) {
+                break;
+            }
+        }
+        iteration_num = iteration;
+
+        double[] weights = labels.getWeights();
+        for (int w = 0; w < worker_num; w++) {
+            weights[w] = 0;
+            for (int k = 0; k < L; k++) {
+                weights[w] += Math.exp(prior[k] + confusion[w * L * L + k * L + k]);
+            }
+        }
+    }
+
+    /* return the number of iterations of the latest pass */
+    public int getIterationNum() {
+        return iteration_num;
+    }
+}
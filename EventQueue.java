@@ -0,0 +1,142 @@
+/**
+ * EventQueue.java provides the queue of timestamped events of the discrete-event
+ * simulation. An event is a kind, a worker and a task at a time in seconds. The events are
+ * kept in a binary heap of primitive arrays, so that pushing and popping an event allocates
+ * nothing, and events at the same time are popped in the order they were pushed, so that a
+ * seeded simulation is reproducible.
+ */
+
+import java.util.Arrays;
+
+public class EventQueue {
+    private double[] times; // times of the events in the heap
+    private long[] seqs; // push sequence numbers of the events in the heap
+    private int[] kinds; // kinds of the events in the heap
+    private int[] workers; // workers of the events in the heap
+    private int[] tasks; // tasks of the events in the heap
+    private int size; // number of events in the heap
+    private long seq; // sequence number of the next pushed event
+
+    /* popped event */
+    private double time; // time of the popped event
+    private int kind; // kind of the popped event
+    private int worker; // worker of the popped event
+    private int task; // task of the popped event
+
+    /* initialization */
+    public EventQueue(int capacity) {
+        capacity = Math.max(capacity, 16);
+        times = new double[capacity];
+        seqs = new long[capacity];
+        kinds = new int[capacity];
+        workers = new int[capacity];
+        tasks = new int[capacity];
+        size = 0;
+        seq = 0;
+    }
+
+    /* push an event */
+    public void push(double time, int kind, int worker, int task) {
+        if (size == times.length) {
+            int capacity = size * 2;
+            times = Arrays.copyOf(times, capacity);
+            seqs = Arrays.copyOf(seqs, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            workers = Arrays.copyOf(workers, capacity);
+            tasks = Arrays.copyOf(tasks, capacity);
+        }
+        // sift the hole up from the new leaf
+        long s = seq++;
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(time, s, parent)) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        set(i, time, s, kind, worker, task);
+    }
+
+    /* pop the earliest event and return false if there is none, where the event is read by time(), kind(), worker() and task() */
+    public boolean pop() {
+        if (size == 0) {
+            return false;
+        }
+        time = times[0];
+        kind = kinds[0];
+        worker = workers[0];
+        task = tasks[0];
+        size--;
+        if (size == 0) {
+            return true;
+        }
+        // sift the last event down from the root
+        double last_time = times[size];
+        long last_seq = seqs[size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && before(times[child + 1], seqs[child + 1], child)) {
+                child++;
+            }
+            if (!before(times[child], seqs[child], size)) {
+                break;
+            }
+            move(child, i);
+            i = child;
+        }
+        set(i, last_time, last_seq, kinds[size], workers[size], tasks[size]);
+        return true;
+    }
+
+    /* return whether an event at a time with a sequence number comes before the event at a position */
+    private boolean before(double time, long s, int j) {
+        return time < times[j] || time == times[j] && s < seqs[j];
+    }
+
+    /* move the event at one position to another */
+    private void move(int from, int to) {
+        times[to] = times[from];
+        seqs[to] = seqs[from];
+        kinds[to] = kinds[from];
+        workers[to] = workers[from];
+        tasks[to] = tasks[from];
+    }
+
+    /* set the event at a position */
+    private void set(int i, double time, long s, int kind, int worker, int task) {
+        times[i] = time;
+        seqs[i] = s;
+        kinds[i] = kind;
+        workers[i] = worker;
+        tasks[i] = task;
+    }
+
+    /* return the number of events in the queue */
+    public int size() {
+        return size;
+    }
+
+    /* return the time of the popped event */
+    public double time() {
+        return time;
+    }
+
+    /* return the kind of the popped event */
+    public int kind() {
+        return kind;
+    }
+
+    /* return the worker of the popped event */
+    public int worker() {
+        return worker;
+    }
+
+    /* return the task of the popped event */
+    public int task() {
+        return task;
+    }
+}
@@ -2,60 +2,112 @@
  * ExtendedTD.java provides the component of extended truth discovery for TDSSA,
  * which iteratively infers the true label of tasks and the quality of workers
  * with the Sybil score and reliability score of workers taken into consideration.
+ * A full pass runs on the sparse labels of the pass (see SparseLabels), where the labels
+ * of a worker outside the pass, e.g., on golden tasks, still count in her weight.
+ * In the incremental mode, the votes on each task and the errors of each worker are
+ * kept across batches, and a batch only re-aggregates the tasks reachable from the
+ * labels and scores changed since the previous batch. An assignment that is still waiting
+ * for its label (-1) takes no part in the aggregation.
  */
 
-import org.apache.commons.math3.distribution.ChiSquaredDistribution;
-
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.Set;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+public class ExtendedTD implements TruthDiscovery {
+    private static final int MAX_ITERATION = 1000; // maximum number of iterations of a pass
+    private static final double ALPHA = 0.05; // significance level of the chi-squared weight
+    private static final ChiSquaredQuantiles QUANTILES = ChiSquaredQuantiles.of(1 - ALPHA / 2); // chi-squared quantiles of the weight
 
-public class ExtendedTD {
     private int L; // label size
+    private double[] votes; // weighted votes on each optional label of a task
+    private int iteration_num; // number of iterations of the latest pass (or rounds of the latest incremental update)
+
+    /* incremental mode */
+    private boolean incremental; // whether batches only re-aggregate the changed part
+    private AnswerMatrix answers; // labels of workers on tasks
+    private double[][] task_votes; // weighted votes of each task in the latest aggregation
+    private int[] errors; // number of labels of each worker that differ from the aggregated labels
+    private double[] contribution; // vote of each worker included in the kept vote vectors
+    private BitSet dirty_tasks; // tasks whose votes may have changed
+    private BitSet dirty_workers; // workers whose weights may have changed
+    private BitSet stale; // tasks whose kept votes must be recounted from their labels
+    private boolean warm; // whether the state has been built by a full pass
+    private ArrayList<Task> normal; // reusable list of normal tasks for a full pass
+
+    /* parallel mode */
+    private ForkJoinPool pool; // pool running the passes over tasks and workers (null means sequential)
+    private ThreadLocal<double[]> scratch; // weighted votes of each thread
 
     /* initialization */
     public ExtendedTD(int L) {
         this.L = L;
+        votes = new double[L];
+    }
+
+    /* run the passes over tasks and workers in parallel on a pool (null means sequential) */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        scratch = ThreadLocal.withInitial(() -> new double[L]);
+    }
+
+    /* initialization of the incremental mode */
+    public ExtendedTD(int L, AnswerMatrix answers) {
+        this(L);
+        incremental = true;
+        this.answers = answers;
+        task_votes = new double[answers.getTaskNum()][L];
+        errors = new int[answers.getWorkerNum()];
+        contribution = new double[answers.getWorkerNum()];
+        dirty_tasks = new BitSet(answers.getTaskNum());
+        dirty_workers = new BitSet(answers.getWorkerNum());
+        stale = new BitSet(answers.getTaskNum());
+        warm = false;
+        normal = new ArrayList<Task>();
     }
 
     /* iteratively run extended truth discovery*/
-    public void process(Set<Task> tasks, Set<Worker> workers) {
+    public void process(Collection<Task> tasks, Collection<Worker> workers) {
+        SparseLabels labels = new SparseLabels(tasks, workers, L);
+        process(labels);
+        labels.apply();
+    }
+
+    /* iteratively run extended truth discovery on the sparse labels of a pass */
+    public void process(SparseLabels labels) {
+        int task_num = labels.getTaskNum();
+        int worker_num = labels.getWorkerNum();
+        int[] aggregated = labels.getAggregated();
+        double[] weights = labels.getWeights();
+        int voter_num = labels.getVoterNum();
+        double[] worker_votes = new double[voter_num]; // vote of each worker (or outside voter) on her labels
         // set the initial weight of workers to their accuracy on golden tasks
         //ETD step 1
-        for (Worker worker : workers) {
-            worker.setWeight(worker.getP());
+        for (int w = 0; w < worker_num; w++) {
+            weights[w] = labels.getP(w);
         }
 
         int iteration = 0;
         //ETD step 3
-        while (iteration < 1000) {
+        while (iteration < MAX_ITERATION) {
             iteration++;
-            int difference = 0;
-            double[] votes = new double[L];
+            for (int w = 0; w < voter_num; w++) {
+                //等式6
+                worker_votes[w] = labels.getS(w) / L + (1 - labels.getS(w)) * weights[w];
+            }
             // extended label aggregation
             //ETD step 4
-            for (Task task : tasks) {
-                int original_label = task.getAggregated();
-                ArrayList<Worker> assigned = task.getAssigned();
-
-                for (int i = 0; i < L; i++) {
-                    votes[i] = 0;
-                }
-                for (Worker worker : assigned) {
-                    int label = worker.getLabeledPairs().get(task);
-                    //等式6
-                    votes[label] += worker.getS() / L + (1 - worker.getS()) * worker.getWeight();
-                }
-                double max_vote = -1;
-                for (int i = 0; i < L; i++) {
-                    if (votes[i] > max_vote) {
-                        task.setAggregated(i);
-                        max_vote = votes[i];
-                    }
-                }
-                if (original_label != task.getAggregated()) {
-                    difference++;
-                }
+            int difference;
+            if (pool == null) {
+                difference = labels.vote(worker_votes, aggregated, 0, task_num, votes);
+            } else {
+                difference = pool.invoke(new Aggregation(labels, worker_votes, 0, task_num, grain(task_num)));
             }
 
             // terminate if converge
@@ -65,31 +117,339 @@ public class ExtendedTD {
 
             // extended weight estimation
             //ETD step 6
-            for (Worker worker : workers) {
-                double correct = 0;
-                double count = 0;
-
-                //new
-                double sigema = 0.0;
-                double alpha = 0.05;
-
-                Map<Task, Integer> assigned = worker.getLabeledPairs();
-                for (Task task : assigned.keySet()) {
-                    /*if (assigned.get(task).intValue() == task.getAggregated()) {
-                        correct += task.getCi();
+            if (pool == null) {
+                for (int w = 0; w < worker_num; w++) {
+                    weigh(labels, w);
+                }
+            } else {
+                pool.invoke(new Estimation(labels, 0, worker_num, grain(worker_num)));
+            }
+        }
+        iteration_num = iteration;
+    }
+
+    /* return the number of iterations of the latest pass (or rounds of the latest incremental update) */
+    public int getIterationNum() {
+        return iteration_num;
+    }
+
+    /* return whether batches update the aggregated labels incrementally */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /* estimate the weight of a worker from her labels and the aggregated labels */
+    private void weigh(SparseLabels labels, int w) {
+        //if vectors have the same value, subtract equal 0, else square of vectors modulus equal 2
+        //the labels outside the pass (e.g., on golden tasks) count with their fixed aggregated labels
+        double sigema = 2.0 * (labels.getOutsideErrors(w) + labels.errors(w, labels.getAggregated()));
+        //according to catd
+        labels.getWeights()[w] = QUANTILES.get(labels.getAssignedNum(w)) / sigema;
+    }
+
+    /* return the size of ranges that are not split further in the parallel mode */
+    private int grain(int size) {
+        return Math.max(16, size / (pool.getParallelism() * 4));
+    }
+
+    /* sum up the weighted votes of the assigned workers of a task on each optional label */
+    private void tally(Task task, double[] votes) {
+        for (int i = 0; i < L; i++) {
+            votes[i] = 0;
+        }
+        int assigned_num = task.getAssignedNum();
+        for (int j = 0; j < assigned_num; j++) {
+            Worker worker = task.getAssignedWorker(j);
+            int label = task.getAssignedLabel(j);
+            if (label == -1) {
+                continue;
+            }
+            //等式6
+            votes[label] += worker.getS() / L + (1 - worker.getS()) * worker.getWeight();
+        }
+    }
+
+    /* set the aggregated label of a task to the label with the most votes */
+    private void choose(Task task, double[] votes) {
+        double max_vote = -1;
+        for (int i = 0; i < L; i++) {
+            if (votes[i] > max_vote) {
+                task.setAggregated(i);
+                max_vote = votes[i];
+            }
+        }
+    }
+
+    /* set the weight of a worker from her labeled task number and the sum of her errors */
+    private void estimate(Worker worker, double sigema) {
+        worker.setWeight(QUANTILES.get(worker.getLabeledNum()) / sigema);
+    }
+
+    /* precompute the chi-squared quantiles of the weight for workers with up to max_labeled labels */
+    public static void precompute(int max_labeled) {
+        QUANTILES.precompute(max_labeled);
+    }
+
+    /* add the vote of a worker to a kept vote vector, or mark the vector for recounting if the vote is not finite */
+    private void vote(int t, int label, double change) {
+        if (Double.isFinite(change)) {
+            task_votes[t][label] += change;
+        } else {
+            stale.set(t);
+        }
+        dirty_tasks.set(t);
+    }
+
+    /* record a new label of a worker on a task for the incremental mode */
+    public void onLabel(Worker worker, Task task, int label) {
+        if (!incremental) {
+            return;
+        }
+        int w = worker.getIndex();
+        if (label != task.getAggregated()) {
+            errors[w]++;
+        }
+        dirty_workers.set(w);
+        if (task.getRole() == Task.NORMAL) {
+            vote(task.getIndex(), label, contribution[w]);
+        }
+    }
+
+    /* record the removal of a worker's label on a task for the incremental mode (called before the removal) */
+    public void onRemove(Worker worker, Task task) {
+        if (!incremental) {
+            return;
+        }
+        int w = worker.getIndex();
+        int label = worker.getLabel(task);
+        if (label == -1) {
+            return;
+        }
+        if (label != task.getAggregated()) {
+            errors[w]--;
+        }
+        dirty_workers.set(w);
+        if (task.getRole() == Task.NORMAL) {
+            vote(task.getIndex(), label, -contribution[w]);
+        }
+    }
+
+    /* record a change of the Sybil score of a worker for the incremental mode */
+    public void onScore(Worker worker) {
+        if (incremental) {
+            dirty_workers.set(worker.getIndex());
+        }
+    }
+
+    /* update the aggregated labels of normal tasks after a batch in the incremental mode */
+    public void update(Collection<Worker> workers) {
+        if (!warm) {
+            full(workers);
+            return;
+        }
+        int round = 0;
+        while (!dirty_workers.isEmpty() || !dirty_tasks.isEmpty()) {
+            round++;
+            // fall back to a full pass if the propagation does not settle or reaches most of the tasks
+            if (round > MAX_ITERATION || dirty_tasks.cardinality() > answers.getTaskNum() / 2) {
+                full(workers);
+                return;
+            }
+
+            // weight estimation of the workers whose labels or errors changed
+            for (int w = dirty_workers.nextSetBit(0); w >= 0; w = dirty_workers.nextSetBit(w + 1)) {
+                Worker worker = answers.getWorker(w);
+                if (worker.isBanned()) {
+                    continue;
+                }
+                estimate(worker, 2.0 * errors[w]);
+                double vote = worker.getS() / L + (1 - worker.getS()) * worker.getWeight();
+                if (Double.compare(vote, contribution[w]) == 0) {
+                    continue;
+                }
+                double change = vote - contribution[w];
+                contribution[w] = vote;
+                for (int j = 0; j < answers.labeledNum(w); j++) {
+                    int t = answers.labeledTask(w, j);
+                    if (answers.getTask(t).getRole() == Task.NORMAL && answers.labeledLabel(w, j) != -1) {
+                        vote(t, answers.labeledLabel(w, j), change);
                     }
-                    count += task.getCi();*/
-                    //if vectors have the same value, subtract equal 0, else square of vectors modulus equal 2
-                    sigema += assigned.get(task) == task.getAggregated() ? 0 : 2;
                 }
-                //if (count > 0) {
-                //count += new ChiSquaredDistribution(worker.getLabeledPairs().size()).inverseCumulativeProbability(1 - alpha / 2) / sigema;
-                //worker.setWeight(correct / count);
-                //according to catd
-                worker.setWeight(new ChiSquaredDistribution(worker.getLabeledPairs().size()).inverseCumulativeProbability(1 - alpha / 2) / sigema);
-                //System.out.println(  " ChiSquared:" + new ChiSquaredDistribution(worker.getLabeledPairs().size()).inverseCumulativeProbability(1 - alpha / 2) / sigema );
-                //}
             }
+            dirty_workers.clear();
+
+            // label aggregation of the tasks whose votes changed
+            for (int t = dirty_tasks.nextSetBit(0); t >= 0; t = dirty_tasks.nextSetBit(t + 1)) {
+                Task task = answers.getTask(t);
+                int original_label = task.getAggregated();
+                if (stale.get(t)) {
+                    tally(task, task_votes[t]);
+                }
+                choose(task, task_votes[t]);
+                int aggregated = task.getAggregated();
+                if (original_label == aggregated) {
+                    continue;
+                }
+                // the labels agreeing with the old or the new aggregated label change the errors of their workers
+                for (int j = 0; j < answers.assignedNum(t); j++) {
+                    int label = answers.assignedLabel(t, j);
+                    if (label != -1 && (label == original_label || label == aggregated)) {
+                        int w = answers.assignedWorker(t, j);
+                        errors[w] += label == original_label ? 1 : -1;
+                        dirty_workers.set(w);
+                    }
+                }
+            }
+            dirty_tasks.clear();
+            stale.clear();
+        }
+        iteration_num = round;
+    }
+
+    /* run a full pass over the normal tasks and rebuild the incremental state */
+    private void full(Collection<Worker> workers) {
+        normal.clear();
+        for (int t = 0; t < answers.getTaskNum(); t++) {
+            Task task = answers.getTask(t);
+            if (task.getRole() == Task.NORMAL) {
+                normal.add(task);
+            }
+        }
+        process(normal, workers);
+
+        for (Task task : normal) {
+            tally(task, task_votes[task.getIndex()]);
+        }
+        for (int w = 0; w < answers.getWorkerNum(); w++) {
+            Worker worker = answers.getWorker(w);
+            errors[w] = 0;
+            for (int j = 0; j < answers.labeledNum(w); j++) {
+                int label = answers.labeledLabel(w, j);
+                if (label != -1 && label != answers.getTask(answers.labeledTask(w, j)).getAggregated()) {
+                    errors[w]++;
+                }
+            }
+            contribution[w] = worker.getS() / L + (1 - worker.getS()) * worker.getWeight();
+        }
+        dirty_tasks.clear();
+        dirty_workers.clear();
+        stale.clear();
+        warm = true;
+    }
+
+    /* write the kept state of the incremental mode into a checkpoint (only whether it is kept otherwise) */
+    public void save(DataOutputStream out) throws IOException {
+        out.writeBoolean(incremental && warm);
+        if (incremental && warm) {
+            out.writeInt(task_votes.length);
+            out.writeInt(errors.length);
+            for (double[] task_vote : task_votes) {
+                for (int i = 0; i < L; i++) {
+                    out.writeDouble(task_vote[i]);
+                }
+            }
+            for (int w = 0; w < errors.length; w++) {
+                out.writeInt(errors[w]);
+                out.writeDouble(contribution[w]);
+            }
+            Checkpoint.writeBits(out, dirty_tasks);
+            Checkpoint.writeBits(out, dirty_workers);
+            Checkpoint.writeBits(out, stale);
+        }
+    }
+
+    /* restore the kept state of the incremental mode from a checkpoint, where a state that is not kept leaves the next
+       update to a full pass, and a kept state is skipped if the incremental mode is off */
+    public void restore(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return;
+        }
+        int task_num = in.readInt();
+        int worker_num = in.readInt();
+        for (int t = 0; t < task_num; t++) {
+            for (int i = 0; i < L; i++) {
+                double vote = in.readDouble();
+                if (incremental) {
+                    task_votes[t][i] = vote;
+                }
+            }
+        }
+        for (int w = 0; w < worker_num; w++) {
+            int error = in.readInt();
+            double vote = in.readDouble();
+            if (incremental) {
+                errors[w] = error;
+                contribution[w] = vote;
+            }
+        }
+        BitSet tasks = Checkpoint.readBits(in);
+        BitSet workers = Checkpoint.readBits(in);
+        BitSet recount = Checkpoint.readBits(in);
+        if (incremental) {
+            dirty_tasks = tasks;
+            dirty_workers = workers;
+            stale = recount;
+            warm = true;
+        }
+    }
+
+    /* label aggregation over a range of tasks, returning the number of changed aggregated labels */
+    private class Aggregation extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L; // tasks of a pool are never serialized
+        private SparseLabels labels; // labels of the pass
+        private double[] worker_votes; // vote of each worker (or outside voter) on her labels
+        private int from; // start of the range (inclusive)
+        private int to; // end of the range (exclusive)
+        private int grain; // size of ranges that are not split further
+
+        /* initialization */
+        Aggregation(SparseLabels labels, double[] worker_votes, int from, int to, int grain) {
+            this.labels = labels;
+            this.worker_votes = worker_votes;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        /* aggregate the range directly or split it into halves */
+        protected Integer compute() {
+            if (to - from <= grain) {
+                return labels.vote(worker_votes, labels.getAggregated(), from, to, scratch.get());
+            }
+            int middle = (from + to) >>> 1;
+            Aggregation left = new Aggregation(labels, worker_votes, from, middle, grain);
+            left.fork();
+            int difference = new Aggregation(labels, worker_votes, middle, to, grain).compute();
+            return difference + left.join();
+        }
+    }
+
+    /* weight estimation over a range of workers */
+    private class Estimation extends RecursiveAction {
+        private static final long serialVersionUID = 1L; // tasks of a pool are never serialized
+        private SparseLabels labels; // labels of the pass
+        private int from; // start of the range (inclusive)
+        private int to; // end of the range (exclusive)
+        private int grain; // size of ranges that are not split further
+
+        /* initialization */
+        Estimation(SparseLabels labels, int from, int to, int grain) {
+            this.labels = labels;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        /* weigh the range directly or split it into halves */
+        protected void compute() {
+            if (to - from <= grain) {
+                for (int w = from; w < to; w++) {
+                    weigh(labels, w);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Estimation(labels, from, middle, grain), new Estimation(labels, middle, to, grain));
         }
     }
 }
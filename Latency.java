@@ -0,0 +1,92 @@
+/**
+ * Latency.java records the latencies of one kind of call in nanoseconds. The latencies
+ * are counted in a histogram whose buckets double in width every 16 buckets, so that a
+ * percentile is reported within 1/16 of the true latency in constant memory however long
+ * the engine runs. A latency record is not thread-safe and is updated under the lock of
+ * its owner.
+ */
+
+public class Latency {
+    private static final int SUB_BITS = 4; // each doubling of latency is split into 2^SUB_BITS buckets
+    private static final int SUB_NUM = 1 << SUB_BITS; // number of buckets of each doubling
+
+    private long[] counts; // number of latencies in each bucket
+    private long count; // number of recorded latencies
+    private long total; // sum of recorded latencies
+    private long max; // maximum recorded latency
+
+    /* initialization */
+    public Latency() {
+        counts = new long[(64 - SUB_BITS) * SUB_NUM];
+    }
+
+    /* record the latency of a call */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        counts[bucket(nanos)]++;
+        count++;
+        total += nanos;
+        max = Math.max(max, nanos);
+    }
+
+    /* return the bucket of a latency, where latencies below 2 * SUB_NUM have a bucket of their own */
+    private static int bucket(long nanos) {
+        if (nanos < 2 * SUB_NUM) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_NUM - 1);
+        return ((exponent - SUB_BITS + 1) << SUB_BITS) + sub;
+    }
+
+    /* return the largest latency of a bucket */
+    private static long upper(int bucket) {
+        if (bucket < 2 * SUB_NUM) {
+            return bucket;
+        }
+        int exponent = (bucket >> SUB_BITS) + SUB_BITS - 1;
+        long lower = (long) (SUB_NUM + (bucket & (SUB_NUM - 1))) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    /* return the latency below which a fraction p of the calls completed (0 if nothing is recorded) */
+    public long percentile(double p) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upper(i), max);
+            }
+        }
+        return max;
+    }
+
+    /* return the number of recorded latencies */
+    public long getCount() {
+        return count;
+    }
+
+    /* return the average latency */
+    public double getMean() {
+        return count == 0 ? 0.0 : (double) total / count;
+    }
+
+    /* return the maximum latency */
+    public long getMax() {
+        return max;
+    }
+
+    /* return a copy of the record */
+    public Latency copy() {
+        Latency latency = new Latency();
+        latency.counts = counts.clone();
+        latency.count = count;
+        latency.total = total;
+        latency.max = max;
+        return latency;
+    }
+}
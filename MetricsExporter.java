@@ -0,0 +1,100 @@
+/**
+ * MetricsExporter.java writes the metrics of each run of TDSSA into the dataset folder next
+ * to "result.txt". Like the line in result.txt, the metrics of a run carry the parameter
+ * point of the runs (B, alpha, tau, delta, mu, epsilon and lambda). The JSON exporter writes
+ * an object of the point, the counters and the latencies of each run into
+ * "metrics_<time>_run<r>.json", named by the start time of the runs so that the files of
+ * earlier runs are kept, and the CSV exporter appends a row of each run to "metrics.csv",
+ * with a header when the file is created. A "metrics.csv" with other columns is rejected
+ * rather than mixed. Other exporters can be plugged in the same way.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public interface MetricsExporter {
+    /* export the metrics of a run (counted from 1) started at a time, with its running time in milliseconds */
+    void export(String time, int run, long running_time, TDSSAEngine.Metrics metrics) throws IOException;
+
+    /* return the exporter of one JSON file per run in a folder for the runs of a parameter point */
+    static MetricsExporter json(String folder, Map<String, Number> point) {
+        return (time, run, running_time, metrics) -> {
+            StringBuilder object = new StringBuilder();
+            object.append("{\"time\": \"").append(time).append("\"");
+            for (Map.Entry<String, Number> entry : fields(point, run, running_time, metrics).entrySet()) {
+                object.append(", \"").append(entry.getKey()).append("\": ").append(entry.getValue());
+            }
+            object.append("}\n");
+            BufferedWriter w = new BufferedWriter(new FileWriter(new File(folder, "metrics_" + time.replace(' ', '_') + "_run" + run + ".json")));
+            w.write(object.toString());
+            w.close();
+        };
+    }
+
+    /* return the exporter of one CSV row per run in a folder for the runs of a parameter point */
+    static MetricsExporter csv(String folder, Map<String, Number> point) {
+        return (time, run, running_time, metrics) -> {
+            File file = new File(folder, "metrics.csv");
+            boolean header = !file.exists() || file.length() == 0;
+            Map<String, Number> fields = fields(point, run, running_time, metrics);
+            String columns = "time," + String.join(",", fields.keySet());
+            if (!header) {
+                BufferedReader reader = new BufferedReader(new FileReader(file));
+                String line = reader.readLine();
+                reader.close();
+                if (!columns.equals(line)) {
+                    throw new IOException(file.getPath() + " has other columns than the exported metrics (move it away to start a new one)");
+                }
+            }
+            BufferedWriter w = new BufferedWriter(new FileWriter(file, true));
+            if (header) {
+                w.write(columns + "\n");
+            }
+            StringBuilder row = new StringBuilder(time);
+            for (Number value : fields.values()) {
+                row.append(',').append(value);
+            }
+            w.write(row.append('\n').toString());
+            w.close();
+        };
+    }
+
+    /* return the exporter of a kind ("json" or "csv") in a folder for the runs of a parameter point */
+    static MetricsExporter of(String kind, String folder, Map<String, Number> point) {
+        if (kind.equals("json")) {
+            return json(folder, point);
+        }
+        if (kind.equals("csv")) {
+            return csv(folder, point);
+        }
+        throw new IllegalArgumentException("Unknown metrics exporter " + kind);
+    }
+
+    /* return the parameter point of the runs in the order of result.txt */
+    static LinkedHashMap<String, Number> point(int B, double alpha, double tau, double delta, double mu, double epsilon, int lambda) {
+        LinkedHashMap<String, Number> point = new LinkedHashMap<String, Number>();
+        point.put("B", B);
+        point.put("alpha", alpha);
+        point.put("tau", tau);
+        point.put("delta", delta);
+        point.put("mu", mu);
+        point.put("epsilon", epsilon);
+        point.put("lambda", lambda);
+        return point;
+    }
+
+    /* return the parameter point, the run, its running time and its metrics by name */
+    static LinkedHashMap<String, Number> fields(Map<String, Number> point, int run, long running_time, TDSSAEngine.Metrics metrics) {
+        LinkedHashMap<String, Number> fields = new LinkedHashMap<String, Number>(point);
+        fields.put("run", run);
+        fields.put("running_time_ms", running_time);
+        fields.putAll(metrics.toMap());
+        return fields;
+    }
+}
@@ -4,22 +4,57 @@
  * the (task, worker, label) triples for normal and golden tasks, respectively. For
  * each run, an "attacker.txt" file and an "order.txt" file will also be created to
  * simulate different replacements of independent workers with Sybil workers and
- * different order of worker requests, respectively.
+ * different order of worker requests, respectively. The same data is also written into
+ * a binary "data.bin" file, which is loaded faster than the text files. Alternatively, the
+ * runs can be described by a seed in a "runs.txt" file, so that the attack and the order of
+ * each run are generated from the seed when TDSSA runs instead of written into files.
+ * Synthetic datasets are generated while being written, so that only the labels of the
+ * tasks and a few counters of each worker are kept in memory. A seeded preprocessing can
+ * also be cached: its files are written into a folder under "cache" in the dataset folder
+ * named by a hash of the source files, the parameters and the seeds, and a preprocessing
+ * with the same hash reuses the folder without reading or writing anything. A folder is
+ * written under a temporary name and renamed when it is complete, so that a cached folder
+ * is never partial, even if several processes preprocess at the same time.
  */
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.FileWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Preprocess {
+    public static final String CACHE = "cache"; // name of the folder of cached preprocessing in the dataset folder
+    public static final int MAX_L = 1 << 16; // largest label size of synthetic datasets
+    private static final String[] SOURCES = {"answer.csv", "truth.csv", "quali.csv", "quali_truth.csv"}; // source files of real datasets
+
     private String dataset; // number of test runs
+    private String folder; // folder that the files are written into (the dataset folder unless cached)
+    private boolean read = false; // indicate whether the source files of a real dataset have been read
+    private boolean read_error = false; // indicate whether reading the source files failed
+    private boolean complete = false; // indicate whether the latest formalization completed
     private int run_num; // number of test runs
     private int golden_num = 20; // number of golden tasks (20 by default)
     private double mu; // percentage of Sybil workers
@@ -31,6 +66,19 @@ public class Preprocess {
     private int K; // number of workers per normal task
     private double theta; // average worker accuracy
     private boolean has_golden = false; // indicate whether golden tasks are provided
+    private boolean seeded_runs = false; // indicate whether runs are described by a seed instead of files
+    private long run_seed; // seed of all runs if runs are seeded
+    private boolean synthetic = false; // indicate whether the dataset is generated (SYN)
+    private int partitions = 1; // number of partitions of tasks that are generated in parallel for synthetic datasets
+    private boolean seeded = false; // indicate whether the preprocessing is seeded
+    private long seed; // seed of the preprocessing if it is seeded
+    private Random rand; // random number generator of the preprocessing
+
+    /* normal tasks and workers in the written order */
+    private int[] normal_ids; // ID of each normal task
+    private int[] worker_list; // ID of each worker with labels on normal tasks
+    private int[] label_nums; // number of labels of each worker on normal tasks
+    private int[] correct_nums; // number of true labels of each worker on normal tasks
 
     private Map<Integer, Map<Integer, Integer>> worker_normal_labels = new HashMap<Integer, Map<Integer, Integer>>(); // (task, label) pairs of each worker on normal tasks
     private Map<Integer, ArrayList<Integer>> normal_workers = new HashMap<Integer, ArrayList<Integer>>(); // workers on each normal task
@@ -47,7 +95,7 @@ public class Preprocess {
         this.mu = mu;
         this.epsilon = epsilon;
         this.lambda = lambda;
-        readData();
+        folder = dataset;
     }
 
     /* initialization for synthetic datasets (SYN) */
@@ -62,7 +110,36 @@ public class Preprocess {
         this.L = L;
         this.K = K;
         this.theta = theta;
-        simulate();
+        synthetic = true;
+        folder = dataset;
+        // the labels of synthetic datasets are kept as unsigned shorts while they are generated
+        if (L > MAX_L) {
+            throw new IllegalArgumentException("Label size " + L + " of a synthetic dataset is above " + MAX_L);
+        }
+    }
+
+    /* set the attack of the next formalization, so that the data read once can be formalized for several attacks */
+    public void setAttack(double mu, double epsilon, int lambda) {
+        this.mu = mu;
+        this.epsilon = epsilon;
+        this.lambda = lambda;
+    }
+
+    /* set the number of partitions of tasks that are generated in parallel for synthetic datasets */
+    public void setPartitions(int partitions) {
+        this.partitions = partitions;
+    }
+
+    /* seed the preprocessing, so that the same data is written */
+    public void setSeed(long seed) {
+        seeded = true;
+        this.seed = seed;
+    }
+
+    /* describe runs by a seed in runs.txt instead of writing the attack and order of each run */
+    public void setRunSeed(long seed) {
+        seeded_runs = true;
+        run_seed = seed;
     }
 
     /* read (task, worker, label) tuples of normal tasks in answer.csv,
@@ -70,8 +147,12 @@ public class Preprocess {
      * read (task, worker, label) tuples of golden tasks in quali.csv
      * and read (task, true label) pairs of golden tasks in quali_truth.csv */
     public void readData() {
+        if (read) {
+            return;
+        }
+        read = true;
         try {
-            BufferedReader r1 = new BufferedReader(new FileReader(dataset + "\\answer.csv"));
+            BufferedReader r1 = new BufferedReader(new FileReader(new File(dataset, "answer.csv")));
             String line = r1.readLine();
             line = r1.readLine();
             int id = 0;
@@ -119,7 +200,7 @@ public class Preprocess {
             r1.close();
 
 
-            BufferedReader r2 = new BufferedReader(new FileReader(dataset + "\\truth.csv"));
+            BufferedReader r2 = new BufferedReader(new FileReader(new File(dataset, "truth.csv")));
             line = r2.readLine();
             line = r2.readLine();
             while (line != null) {
@@ -134,12 +215,12 @@ public class Preprocess {
             }
             r2.close();
 
-            File f1 = new File(dataset + "\\quali.csv");
+            File f1 = new File(dataset, "quali.csv");
             if (f1.exists()) {
                 has_golden = true;
             }
             if (has_golden) {
-                BufferedReader r3 = new BufferedReader(new FileReader(dataset + "\\quali.csv"));
+                BufferedReader r3 = new BufferedReader(new FileReader(new File(dataset, "quali.csv")));
                 line = r3.readLine();
                 line = r3.readLine();
                 while (line != null) {
@@ -159,7 +240,7 @@ public class Preprocess {
                 }
                 r3.close();
 
-                BufferedReader r4 = new BufferedReader(new FileReader(dataset + "\\quali_truth.csv"));
+                BufferedReader r4 = new BufferedReader(new FileReader(new File(dataset, "quali_truth.csv")));
                 line = r4.readLine();
                 line = r4.readLine();
                 while (line != null) {
@@ -176,54 +257,164 @@ public class Preprocess {
                 r4.close();
             }
         } catch (Exception e) {
+            read_error = true;
             e.printStackTrace();
         }
     }
 
-    public void simulate() {
-        // create tasks and their true label
-        Random rand = new Random();
-        for (int i = 0; i < N; i++) {
-            normal_truth.put(i, rand.nextInt(L));
-        }
-
-        // create workers and their label on tasks
-        ArrayList<Integer> avail_workers = new ArrayList<Integer>();
-        for (int i = 0; i < M; i++) {
-            avail_workers.add(i);
-            worker_normal_labels.put(i, new HashMap<Integer, Integer>());
-        }
-        int answer_num = N * K / M + 5;
-        ArrayList<Integer> removed = new ArrayList<Integer>();
-        for (int i = 0; i < N; i++) {
-            Collections.shuffle(avail_workers);
-            ArrayList<Integer> t_workers = new ArrayList<Integer>();
-            for (int j = 0; j < K; j++) {
-                int worker = avail_workers.get(avail_workers.size() - 1 - j);
-                Map<Integer, Integer> task_labels = worker_normal_labels.get(worker);
-                int truth = normal_truth.get(i);
-                if (rand.nextDouble() <= theta) {
-                    task_labels.put(i, truth);
-                } else {
-                    int label = rand.nextInt(L);
-                    while (label == truth) {
+    /* generate the tasks of synthetic datasets with their true labels and the labels of workers on them, and write them
+     * into input.txt and data.bin; the tasks are split into partitions that are generated in parallel, each from its own seed */
+    private void simulate(BufferedWriter w1, DataOutputStream b) throws Exception {
+        long partition_seed = rand.nextLong(); // seed of all partitions
+        Partition[] parts = new Partition[partitions];
+        ExecutorService pool = Executors.newFixedThreadPool(partitions);
+        ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int p = 0; p < partitions; p++) {
+            Partition part = new Partition((int) ((long) N * p / partitions), (int) ((long) N * (p + 1) / partitions));
+            SplittableRandom part_rand = new SplittableRandom(partition_seed ^ (p * 0x9E3779B97F4A7C15L));
+            parts[p] = part;
+            futures.add(pool.submit(() -> part.generate(part_rand)));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        // the partitions are written in the order of their tasks
+        normal_ids = new int[N];
+        label_nums = new int[M];
+        correct_nums = new int[M];
+        for (Partition part : parts) {
+            for (int t = part.from, i = 0; t < part.to; t++) {
+                normal_ids[t] = t;
+                w1.write(t + "\t" + part.truths[t - part.from] + "\t" + part.nums[t - part.from] + "\t");
+                for (int j = 0; j < part.nums[t - part.from]; j++, i++) {
+                    w1.write(part.workers[i] + "\t" + part.getLabel(i) + "\t");
+                }
+                w1.write("\n");
+            }
+            for (int w = 0; w < M; w++) {
+                label_nums[w] += part.label_nums[w];
+                correct_nums[w] += part.correct_nums[w];
+            }
+        }
+        b.writeInt(N);
+        for (int t = 0; t < N; t++) {
+            b.writeInt(t);
+        }
+        for (Partition part : parts) {
+            for (int truth : part.truths) {
+                b.writeInt(truth);
+            }
+        }
+        for (Partition part : parts) {
+            for (int num : part.nums) {
+                b.writeInt(num);
+            }
+        }
+        for (Partition part : parts) {
+            for (int i = 0; i < part.size; i++) {
+                b.writeInt(part.workers[i]);
+            }
+        }
+        for (Partition part : parts) {
+            for (int i = 0; i < part.size; i++) {
+                b.writeInt(part.getLabel(i));
+            }
+        }
+
+        // workers without labels on normal tasks do not appear in the dataset
+        int worker_num = 0;
+        for (int w = 0; w < M; w++) {
+            if (label_nums[w] > 0) {
+                worker_num++;
+            }
+        }
+        worker_list = new int[worker_num];
+        int[] labeled = new int[worker_num];
+        int[] correct = new int[worker_num];
+        for (int w = 0, i = 0; w < M; w++) {
+            if (label_nums[w] > 0) {
+                worker_list[i] = w;
+                labeled[i] = label_nums[w];
+                correct[i++] = correct_nums[w];
+            }
+        }
+        label_nums = labeled;
+        correct_nums = correct;
+    }
+
+    /* tasks of a synthetic dataset in a range of IDs with their true labels and the labels of workers on them */
+    private class Partition {
+        private int from; // first task ID
+        private int to; // task ID after the last task
+        private int[] truths; // true label of each task
+        private int[] nums; // number of workers on each task
+        private int[] workers; // worker of each label, ordered by task
+        private short[] labels; // each label as an unsigned short, ordered by task
+        private int size; // number of labels
+        private int[] label_nums; // number of labels of each worker in the partition
+        private int[] correct_nums; // number of true labels of each worker in the partition
+
+        /* initialization */
+        private Partition(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        /* generate the true label of each task and K distinct workers with their labels on each task */
+        private void generate(SplittableRandom rand) {
+            truths = new int[to - from];
+            nums = new int[to - from];
+            workers = new int[(to - from) * K];
+            labels = new short[(to - from) * K];
+            label_nums = new int[M];
+            correct_nums = new int[M];
+
+            // workers stop labeling at a capacity slightly above the average number of labels in the partition
+            int answer_num = (int) ((long) (to - from) * K / M) + 5;
+            int[] avail_workers = new int[M]; // workers below the capacity come first
+            int avail_num = M; // number of workers below the capacity
+            for (int i = 0; i < M; i++) {
+                avail_workers[i] = i;
+            }
+            for (int t = 0; t < to - from; t++) {
+                int truth = rand.nextInt(L);
+                truths[t] = truth;
+                int num = Math.min(K, avail_num);
+                nums[t] = num;
+                // the first num available workers are drawn by a partial shuffle
+                for (int j = 0; j < num; j++) {
+                    int k = j + rand.nextInt(avail_num - j);
+                    int worker = avail_workers[k];
+                    avail_workers[k] = avail_workers[j];
+                    avail_workers[j] = worker;
+                    int label = truth;
+                    if (rand.nextDouble() > theta) {
                         label = rand.nextInt(L);
+                        while (label == truth) {
+                            label = rand.nextInt(L);
+                        }
+                    } else {
+                        correct_nums[worker]++;
                     }
-                    task_labels.put(i, label);
-                }
-                worker_normal_labels.put(worker, task_labels);
-                if (task_labels.size() == answer_num) {
-                    removed.add(worker);
+                    workers[size] = worker;
+                    labels[size++] = (short) label;
                 }
-                t_workers.add(worker);
-            }
-            avail_workers = new ArrayList<Integer>();
-            for (int j = 0; j < M; j++) {
-                if (!removed.contains(j)) {
-                    avail_workers.add(j);
+                // drawn workers that reach the capacity are moved behind the available workers
+                for (int j = num - 1; j >= 0; j--) {
+                    int worker = avail_workers[j];
+                    if (++label_nums[worker] == answer_num) {
+                        avail_workers[j] = avail_workers[--avail_num];
+                        avail_workers[avail_num] = worker;
+                    }
                 }
             }
-            normal_workers.put(i, t_workers);
+        }
+
+        /* return the ith label */
+        private int getLabel(int i) {
+            return labels[i] & 0xFFFF;
         }
     }
 
@@ -232,7 +423,7 @@ public class Preprocess {
     public void replace() {
         attacker_sybils = new HashMap<Integer, ArrayList<Integer>>();
         // decide the number of Sybil workers for each attacker
-        int num = (int) Math.ceil(worker_normal_labels.size() * mu);
+        int num = (int) Math.ceil(worker_list.length * mu);
         int[] attacker_Sybil_num = new int[lambda];
         for (int i = 0; i < lambda; i++) {
             attacker_Sybil_num[i] = (int) Math.floor(num / lambda);
@@ -240,8 +431,11 @@ public class Preprocess {
         attacker_Sybil_num[lambda - 1] = num - attacker_Sybil_num[0] * (lambda - 1);
 
         // update attacker_sybils by randomly assigning independent workers to each attacker as Sybil workers
-        ArrayList<Integer> temp_workers = new ArrayList<Integer>(worker_normal_labels.keySet());
-        Collections.shuffle(temp_workers);
+        ArrayList<Integer> temp_workers = new ArrayList<Integer>();
+        for (int worker : worker_list) {
+            temp_workers.add(worker);
+        }
+        Collections.shuffle(temp_workers, rand);
         for (int i = 0; i < lambda; i++) {
             ArrayList<Integer> workers = new ArrayList<Integer>();
             for (int j = 0; j < attacker_Sybil_num[i]; j++) {
@@ -252,108 +446,233 @@ public class Preprocess {
         }
     }
 
+    /* write the normal tasks of real datasets into input.txt and data.bin */
+    private void write(BufferedWriter w1, DataOutputStream b) throws Exception {
+        for (Integer task : normal_truth.keySet()) {
+            // write task ID, true label and number of workers for each task
+            w1.write(task + "\t" + normal_truth.get(task) + "\t" + normal_workers.get(task).size() + "\t");
+            // write worker ID and corresponding label
+            for (Integer worker : normal_workers.get(task)) {
+                w1.write(worker.intValue() + "\t" + worker_normal_labels.get(worker).get(task).intValue() + "\t");
+            }
+            w1.write("\n");
+        }
+        // the binary normal section has the columns of task ID, true label and worker number, followed by the columns of worker ID and label
+        b.writeInt(normal_truth.size());
+        for (Integer task : normal_truth.keySet()) {
+            b.writeInt(task);
+        }
+        for (Integer task : normal_truth.keySet()) {
+            b.writeInt(normal_truth.get(task));
+        }
+        for (Integer task : normal_truth.keySet()) {
+            b.writeInt(normal_workers.get(task).size());
+        }
+        for (Integer task : normal_truth.keySet()) {
+            for (Integer worker : normal_workers.get(task)) {
+                b.writeInt(worker);
+            }
+        }
+        for (Integer task : normal_truth.keySet()) {
+            for (Integer worker : normal_workers.get(task)) {
+                b.writeInt(worker_normal_labels.get(worker).get(task));
+            }
+        }
+
+        normal_ids = new int[normal_truth.size()];
+        int i = 0;
+        for (Integer task : normal_truth.keySet()) {
+            normal_ids[i++] = task.intValue();
+        }
+        worker_list = new int[worker_normal_labels.size()];
+        label_nums = new int[worker_list.length];
+        correct_nums = new int[worker_list.length];
+        i = 0;
+        for (Integer worker : worker_normal_labels.keySet()) {
+            Map<Integer, Integer> task_labels = worker_normal_labels.get(worker);
+            worker_list[i] = worker.intValue();
+            label_nums[i] = task_labels.size();
+            for (Integer task : task_labels.keySet()) {
+                if (normal_truth.get(task).intValue() == task_labels.get(task).intValue()) {
+                    correct_nums[i]++;
+                }
+            }
+            i++;
+        }
+    }
+
     /* write the overall data info into input.txt and write the information
-     * of Sybil attack, golden tasks and request order for each run */
+     * of Sybil attack, golden tasks and request order for each run
+     * (the same data is also written into the binary file data.bin, see Dataset) */
     public void formalize() {
-        Random rand = new Random();
+        // the source files of a real dataset are only read when they are formalized
+        if (!synthetic) {
+            readData();
+        }
+        complete = false;
+        // nothing is written if the source files could not be read, so that the files of an earlier formalization are kept
+        if (read_error) {
+            return;
+        }
+        rand = seeded ? new Random(seed) : new Random();
         try {
-            BufferedWriter w1 = new BufferedWriter(new FileWriter(dataset + "\\input.txt"));
+            // the folder of a synthetic dataset may not exist yet
+            new File(folder).mkdirs();
+            // the offsets of run sections are counted in a long, as DataOutputStream.size() stops at 2 GiB
+            CountingStream counter = new CountingStream(new BufferedOutputStream(new FileOutputStream(new File(folder, Dataset.BINARY))));
+            DataOutputStream b = new DataOutputStream(counter);
+            b.writeInt(Dataset.MAGIC);
+            b.writeInt(Dataset.VERSION);
+
+            BufferedWriter w1 = new BufferedWriter(new FileWriter(new File(folder, "input.txt")));
             // write worker number M, task number N, label size L and worker number per task K
             w1.write(M + "\t" + N + "\t" + L + "\t" + K + "\n");
-            for (Integer task : normal_truth.keySet()) {
-                // write task ID, true label and number of workers for each task
-                w1.write(task + "\t" + normal_truth.get(task) + "\t" + normal_workers.get(task).size() + "\t");
-                // write worker ID and corresponding label
-                for (Integer worker : normal_workers.get(task)) {
-                    w1.write(worker.intValue() + "\t" + worker_normal_labels.get(worker).get(task).intValue() + "\t");
-                }
-                w1.write("\n");
+            b.writeInt(M);
+            b.writeInt(N);
+            b.writeInt(L);
+            b.writeInt(K);
+            if (synthetic) {
+                simulate(w1, b);
+            } else {
+                write(w1, b);
             }
             w1.close();
 
-            BufferedWriter w2 = new BufferedWriter(new FileWriter(dataset + "\\golden.txt"));
-            w2.write(golden_num + "\n");
+            // the golden section has the columns of golden task ID and true label, followed by
+            // the column of worker ID and the columns of golden task ID and label of each worker
+            int[] golden_ids = new int[golden_num];
+            int[] golden_truths = new int[golden_num];
+            ArrayList<Integer> golden_workers = new ArrayList<Integer>();
+            ArrayList<int[]> golden_answers = new ArrayList<int[]>(); // golden task IDs and labels of each worker
             if (has_golden) {
-                // write the true label of each golden task
+                int i = 0;
                 for (Integer golden : golden_truth.keySet()) {
-                    w2.write(golden.intValue() + "\t" + golden_truth.get(golden).intValue() + "\t");
+                    golden_ids[i] = golden.intValue();
+                    golden_truths[i] = golden_truth.get(golden).intValue();
+                    i++;
                 }
-                w2.write("\n");
-                // write the label of each worker on each golden task
                 for (Integer worker : worker_golden_labels.keySet()) {
-                    w2.write(worker.intValue() + "\t");
                     Map<Integer, Integer> golden_labels = worker_golden_labels.get(worker);
+                    int[] answers = new int[golden_labels.size() * 2];
+                    int j = 0;
                     for (Integer golden : golden_labels.keySet()) {
-                        w2.write(golden.intValue() + "\t" + golden_labels.get(golden).intValue() + "\t");
+                        answers[j++] = golden.intValue();
+                        answers[j++] = golden_labels.get(golden).intValue();
                     }
-                    w2.write("\n");
+                    golden_workers.add(worker);
+                    golden_answers.add(answers);
                 }
             } else {
                 // generate golden tasks
-                int[] golden_labels = new int[golden_num];
                 for (int i = 0; i < golden_num; i++) {
-                    golden_labels[i] = rand.nextInt(L);
-                    w2.write((-1 - i) + "\t" + golden_labels[i] + "\t");
+                    golden_ids[i] = -1 - i;
+                    golden_truths[i] = rand.nextInt(L);
                 }
-                w2.write("\n");
                 // determine the label provided by each worker on golden tasks
-                for (Integer worker : worker_normal_labels.keySet()) {
-                    w2.write(worker.intValue() + "\t");
+                for (int w = 0; w < worker_list.length; w++) {
                     // compute the worker's accuracy
-                    double acc = 0.0;
-                    Map<Integer, Integer> task_labels = worker_normal_labels.get(worker);
-                    for (Integer task : task_labels.keySet()) {
-                        if (normal_truth.get(task).intValue() == task_labels.get(task).intValue()) {
-                            acc += 1;
-                        }
-                    }
-                    acc = acc / task_labels.size();
+                    double acc = (double) correct_nums[w] / label_nums[w];
 
                     // generate the worker's label on each golden task based on the computed accuracy
+                    int[] answers = new int[golden_num * 2];
                     for (int i = 0; i < golden_num; i++) {
-                        w2.write(-1 - i + "\t");
+                        answers[i * 2] = -1 - i;
                         if (rand.nextDouble() <= acc) {
-                            w2.write(golden_labels[i] + "\t");
+                            answers[i * 2 + 1] = golden_truths[i];
                         } else {
                             int answer = rand.nextInt(L);
-                            while (answer == golden_labels[i]) {
+                            while (answer == golden_truths[i]) {
                                 answer = rand.nextInt(L);
                             }
-                            w2.write(answer + "\t");
+                            answers[i * 2 + 1] = answer;
                         }
                     }
-                    w2.write("\n");
+                    golden_workers.add(worker_list[w]);
+                    golden_answers.add(answers);
+                }
+            }
+
+            BufferedWriter w2 = new BufferedWriter(new FileWriter(new File(folder, "golden.txt")));
+            w2.write(golden_num + "\n");
+            // write the true label of each golden task
+            for (int i = 0; i < golden_num; i++) {
+                w2.write(golden_ids[i] + "\t" + golden_truths[i] + "\t");
+            }
+            w2.write("\n");
+            // write the label of each worker on each golden task
+            for (int i = 0; i < golden_workers.size(); i++) {
+                w2.write(golden_workers.get(i).intValue() + "\t");
+                int[] answers = golden_answers.get(i);
+                for (int j = 0; j < answers.length; j += 2) {
+                    w2.write(answers[j] + "\t" + answers[j + 1] + "\t");
                 }
+                w2.write("\n");
             }
             w2.close();
+            b.writeInt(golden_num);
+            for (int i = 0; i < golden_num; i++) {
+                b.writeInt(golden_ids[i]);
+            }
+            for (int i = 0; i < golden_num; i++) {
+                b.writeInt(golden_truths[i]);
+            }
+            b.writeInt(golden_workers.size());
+            for (Integer worker : golden_workers) {
+                b.writeInt(worker);
+            }
+            for (int[] answers : golden_answers) {
+                for (int j = 0; j < answers.length; j += 2) {
+                    b.writeInt(answers[j]);
+                }
+            }
+            for (int[] answers : golden_answers) {
+                for (int j = 1; j < answers.length; j += 2) {
+                    b.writeInt(answers[j]);
+                }
+            }
 
-            for (int run = 0; run < run_num; run++) {
-                File f = new File(dataset + "/" + run);
+            long[] attack_offsets = new long[run_num]; // start of the attack section of each run in data.bin
+            long[] order_offsets = new long[run_num]; // start of the order section of each run in data.bin
+            // seeded runs only need their seed, and stale seeded runs must not hide the files of runs
+            File runs = new File(folder, Dataset.RUNS);
+            if (seeded_runs) {
+                BufferedWriter w5 = new BufferedWriter(new FileWriter(runs));
+                w5.write(mu + "\t" + epsilon + "\t" + lambda + "\t" + run_seed + "\n");
+                w5.close();
+            } else {
+                runs.delete();
+            }
+            int file_num = seeded_runs ? 0 : run_num; // number of runs written into files
+            for (int run = 0; run < file_num; run++) {
+                File f = new File(folder, String.valueOf(run));
                 f.mkdir();
                 replace();
 
                 // attack.txt contains the labels randomized by each attacker and the Sybil workers controlled by each attacker
-                BufferedWriter w3 = new BufferedWriter(new FileWriter(dataset + "\\" + run + "\\attack.txt"));
+                BufferedWriter w3 = new BufferedWriter(new FileWriter(new File(f, "attack.txt")));
                 w3.write(mu + "\t" + epsilon + "\t" + lambda + "\n");
+                attack_offsets[run] = counter.getCount();
+                b.writeDouble(epsilon);
+                b.writeInt(lambda);
                 for (int i = 0; i < lambda; i++) {
                     // write attacker ID and total number of tasks for each attacker
-                    w3.write(i + "\t" + (normal_truth.size() + golden_num) + "\t");
-                    // write task ID and randomized label for normal tasks
-                    for (Integer task : normal_truth.keySet()) {
-                        w3.write(task.intValue() + "\t" + rand.nextInt(L) + "\t");
+                    w3.write(i + "\t" + (normal_ids.length + golden_num) + "\t");
+                    // write task ID and randomized label for normal tasks and golden tasks
+                    int[] task_ids = new int[normal_ids.length + golden_num];
+                    int[] labels = new int[task_ids.length];
+                    int j = 0;
+                    for (int task : normal_ids) {
+                        task_ids[j] = task;
+                        labels[j++] = rand.nextInt(L);
                     }
-                    // write task ID and randomized label for golden tasks
-                    if (has_golden) {
-                        for (Integer golden : golden_truth.keySet()) {
-                            w3.write(golden.intValue() + "\t" + rand.nextInt(L) + "\t");
-                        }
-                        w3.write("\n");
-                    } else {
-                        for (int j = -1; j >= 0 - golden_num; j--) {
-                            w3.write(j + "\t" + rand.nextInt(L) + "\t");
-                        }
-                        w3.write("\n");
+                    for (int k = 0; k < golden_num; k++) {
+                        task_ids[j] = golden_ids[k];
+                        labels[j++] = rand.nextInt(L);
+                    }
+                    for (j = 0; j < task_ids.length; j++) {
+                        w3.write(task_ids[j] + "\t" + labels[j] + "\t");
                     }
+                    w3.write("\n");
                     ArrayList<Integer> workers = attacker_sybils.get(i);
                     // write attacker ID and number of Sybil workers for each attacker
                     w3.write(i + "\t" + workers.size() + "\t");
@@ -362,30 +681,210 @@ public class Preprocess {
                         w3.write(worker.intValue() + "\t");
                     }
                     w3.write("\n");
+
+                    // the attacker has the columns of task ID and label, followed by the column of Sybil worker ID
+                    b.writeInt(i);
+                    b.writeInt(task_ids.length);
+                    for (int task_id : task_ids) {
+                        b.writeInt(task_id);
+                    }
+                    for (int label : labels) {
+                        b.writeInt(label);
+                    }
+                    b.writeInt(workers.size());
+                    for (Integer worker : workers) {
+                        b.writeInt(worker);
+                    }
                 }
                 w3.close();
 
-                BufferedWriter w4 = new BufferedWriter(new FileWriter(dataset + "\\" + run + "\\order.txt"));
+                BufferedWriter w4 = new BufferedWriter(new FileWriter(new File(f, "order.txt")));
                 ArrayList<Integer> order = new ArrayList<Integer>();
                 // decide the number of requests for each worker
-                for (Integer worker : worker_normal_labels.keySet()) {
-                    Map<Integer, Integer> task_labels = worker_normal_labels.get(worker);
-                    for (int i = 0; i < task_labels.size(); i++) {
-                        order.add(worker);
-                    }
-                    for (int i = 0; i < golden_num; i++) {
-                        order.add(worker);
+                for (int w = 0; w < worker_list.length; w++) {
+                    for (int i = 0; i < label_nums[w] + golden_num; i++) {
+                        order.add(worker_list[w]);
                     }
                 }
                 // randomize the request order
-                Collections.shuffle(order);
+                Collections.shuffle(order, rand);
                 for (Integer worker : order) {
                     w4.write(worker.intValue() + "\n");
                 }
                 w4.close();
+                order_offsets[run] = counter.getCount();
+                b.writeInt(order.size());
+                for (Integer worker : order) {
+                    b.writeInt(worker);
+                }
             }
+
+            // the index of run sections is followed by its own start at the end of the file
+            long index = counter.getCount();
+            b.writeInt(file_num);
+            for (int run = 0; run < file_num; run++) {
+                b.writeLong(attack_offsets[run]);
+                b.writeLong(order_offsets[run]);
+            }
+            b.writeLong(index);
+            b.close();
+            complete = !read_error;
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
+
+    /* return whether the latest formalization completed */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /* formalize into the cached folder of the hash unless it exists, and return the folder of the files (null if the
+     * formalization fails); an unseeded preprocessing is random, so it is formalized into the dataset folder as before */
+    public String formalizeCached() {
+        if (!seeded) {
+            formalize();
+            return complete ? dataset : null;
+        }
+        try {
+            File cache = new File(dataset, CACHE);
+            File cached = new File(cache, hash());
+            if (new File(cached, Dataset.BINARY).exists()) {
+                return cached.getPath();
+            }
+            cache.mkdirs();
+            Path staging = Files.createTempDirectory(cache.toPath(), cached.getName() + ".");
+            folder = staging.toString();
+            try {
+                formalize();
+            } finally {
+                folder = dataset;
+            }
+            if (!complete) {
+                delete(staging.toFile());
+                throw new IllegalStateException("Preprocessing of " + dataset + " failed");
+            }
+            try {
+                Files.move(staging, cached.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // another process may have cached the same files meanwhile
+                delete(staging.toFile());
+                if (!new File(cached, Dataset.BINARY).exists()) {
+                    throw e;
+                }
+            }
+            return cached.getPath();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /* formalize into a new folder under "cache" in the dataset folder, and return the folder (null if the formalization
+     * fails), so that the files of an earlier formalization are never rewritten while a loaded dataset still maps them */
+    public String formalizeStaged() {
+        try {
+            File cache = new File(dataset, CACHE);
+            cache.mkdirs();
+            Path staging = Files.createTempDirectory(cache.toPath(), "staged.");
+            folder = staging.toString();
+            try {
+                formalize();
+            } finally {
+                folder = dataset;
+            }
+            if (!complete) {
+                delete(staging.toFile());
+                return null;
+            }
+            return staging.toString();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /* delete a folder written by formalizeStaged, where a file that is still mapped (e.g., on Windows) may be left */
+    public static void discard(String folder) {
+        delete(new File(folder));
+    }
+
+    /* return the hash of the source files of a real dataset, the parameters and the seeds in hexadecimal */
+    public String hash() throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        StringBuilder parameters = new StringBuilder();
+        parameters.append("version=").append(Dataset.VERSION).append(" runs=").append(run_num).append(" golden=").append(golden_num)
+                .append(" mu=").append(mu).append(" epsilon=").append(epsilon).append(" lambda=").append(lambda)
+                .append(" seed=").append(seed).append(" run_seed=").append(seeded_runs ? String.valueOf(run_seed) : "none");
+        if (synthetic) {
+            parameters.append(" N=").append(N).append(" M=").append(M).append(" L=").append(L).append(" K=").append(K)
+                    .append(" theta=").append(theta).append(" partitions=").append(partitions);
+        }
+        digest.update(parameters.toString().getBytes("UTF-8"));
+        if (!synthetic) {
+            byte[] buffer = new byte[1 << 16];
+            // the golden source files are optional as in readData, but a source file that is read must be hashed
+            boolean has_golden_sources = new File(dataset, "quali.csv").exists();
+            for (String source : SOURCES) {
+                File file = new File(dataset, source);
+                boolean golden_source = source.startsWith("quali");
+                if (!file.isFile()) {
+                    if (!golden_source || has_golden_sources) {
+                        throw new FileNotFoundException("Source file " + file.getPath() + " of " + dataset + " is missing");
+                    }
+                    digest.update((source + " absent\n").getBytes("UTF-8"));
+                    continue;
+                }
+                digest.update((source + "=" + file.length() + "\n").getBytes("UTF-8"));
+                InputStream in = new FileInputStream(file);
+                for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                    digest.update(buffer, 0, n);
+                }
+                in.close();
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte x : digest.digest()) {
+            hex.append(String.format("%02x", x));
+        }
+        return hex.substring(0, 32);
+    }
+
+    /* delete a file or a folder with its contents */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /* output stream that counts the bytes written into it */
+    private static class CountingStream extends FilterOutputStream {
+        private long count; // number of bytes written
+
+        /* initialization */
+        private CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        /* write a byte */
+        public void write(int x) throws IOException {
+            out.write(x);
+            count++;
+        }
+
+        /* write a range of bytes */
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+
+        /* return the number of bytes written */
+        private long getCount() {
+            return count;
+        }
+    }
 }
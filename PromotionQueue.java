@@ -0,0 +1,83 @@
+/**
+ * PromotionQueue.java keeps the frontier of normal tasks that may be promoted to golden
+ * tasks at the next batch, i.e., the tasks with at least K assigned workers whose assigned
+ * workers or their reliability scores changed since the frontier was last drained. The
+ * average reliability score of any other task is the same as when it was last evaluated,
+ * so a batch only evaluates the frontier. The frontier is drained in the order of the
+ * normal tasks given at initialization, so tasks are promoted in the same order as by a
+ * scan over all normal tasks. The queue is built for a single run.
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+public class PromotionQueue {
+    private int K; // number of workers per task
+
+    private Task[] tasks; // normal tasks in the evaluation order
+    private int[] position; // position of each task in the evaluation order (-1 means not a normal task)
+    private BitSet frontier; // positions of tasks to evaluate at the next batch
+    private int cursor; // position to continue draining the frontier from
+
+    /* initialization */
+    public PromotionQueue(Collection<Task> normal_tasks, int task_num, int K) {
+        this.K = K;
+        tasks = normal_tasks.toArray(new Task[0]);
+        position = new int[task_num];
+        Arrays.fill(position, -1);
+        for (int i = 0; i < tasks.length; i++) {
+            position[tasks[i].getIndex()] = i;
+        }
+        frontier = new BitSet(tasks.length);
+        cursor = 0;
+    }
+
+    /* record a change of the assigned workers of a task */
+    public void onChange(Task task) {
+        int p = position[task.getIndex()];
+        if (p != -1 && !task.isGolden() && task.getAssignedNum() >= K) {
+            frontier.set(p);
+        }
+    }
+
+    /* record a change of the reliability score of a worker, which changes the tasks she labeled */
+    public void onReliability(Worker worker) {
+        for (int i = 0; i < worker.getLabeledNum(); i++) {
+            onChange(worker.getLabeledTask(i));
+        }
+    }
+
+    /* write the ordinals of the tasks of the frontier into a checkpoint (between batches, when no drain is in progress) */
+    public void save(DataOutputStream out) throws IOException {
+        out.writeInt(frontier.cardinality());
+        for (int p = frontier.nextSetBit(0); p >= 0; p = frontier.nextSetBit(p + 1)) {
+            out.writeInt(tasks[p].getIndex());
+        }
+    }
+
+    /* restore the frontier from a checkpoint */
+    public void restore(DataInputStream in) throws IOException {
+        frontier.clear();
+        int num = in.readInt();
+        for (int i = 0; i < num; i++) {
+            frontier.set(position[in.readInt()]);
+        }
+        cursor = 0;
+    }
+
+    /* remove and return the next task of the frontier (null once the frontier is drained) */
+    public Task poll() {
+        int p = frontier.nextSetBit(cursor);
+        if (p < 0) {
+            cursor = 0;
+            return null;
+        }
+        frontier.clear(p);
+        cursor = p + 1;
+        return tasks[p];
+    }
+}
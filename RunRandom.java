@@ -0,0 +1,57 @@
+/**
+ * RunRandom.java provides the random number generator of a run. It draws the same numbers
+ * as java.util.Random from the same seed, i.e., the same linear congruential generator, and
+ * additionally lets its state be read and set, so that a checkpoint of a run can continue
+ * the numbers of the run where they stopped. Like java.util.Random, it can be shared by
+ * the threads serving concurrent requests.
+ */
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RunRandom extends Random {
+    private static final long serialVersionUID = 1L; // checkpoints write the state instead of serializing the generator
+    private static final long MULTIPLIER = 0x5DEECE66DL; // multiplier of the generator
+    private static final long ADDEND = 0xBL; // addend of the generator
+    private static final long MASK = (1L << 48) - 1; // the state has 48 bits
+
+    private AtomicLong state; // state of the generator (set by the constructor of Random through setSeed)
+
+    /* initialization with an unseeded state */
+    public RunRandom() {
+        super();
+    }
+
+    /* initialization with a seed */
+    public RunRandom(long seed) {
+        super(seed);
+    }
+
+    /* set the state from a seed as java.util.Random does */
+    public synchronized void setSeed(long seed) {
+        if (state == null) {
+            state = new AtomicLong();
+        }
+        state.set((seed ^ MULTIPLIER) & MASK);
+    }
+
+    /* advance the state and return its high bits */
+    protected int next(int bits) {
+        long current, next;
+        do {
+            current = state.get();
+            next = (current * MULTIPLIER + ADDEND) & MASK;
+        } while (!state.compareAndSet(current, next));
+        return (int) (next >>> (48 - bits));
+    }
+
+    /* return the state of the generator */
+    public long getState() {
+        return state.get();
+    }
+
+    /* set the state of the generator */
+    public void setState(long state) {
+        this.state.set(state & MASK);
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * Simulator.java provides the discrete-event simulation of the workers of a run served by
+ * a TDSSA engine. Workers arrive by an arrival process in the order of their first request
+ * in the requesting order, and each worker makes as many requests as she does there. An
+ * assigned task is labeled after an exponentially distributed labeling time, the next
+ * request follows after an exponentially distributed thinking time, and a worker leaves
+ * when her requests run out or she is banned. The engine decides the assignment, the
+ * bans and the batches, and a batch publishes its aggregated labels after a fixed batch
+ * time. The simulation reports the simulated time, the number of tasks waiting for labels,
+ * and the staleness of labels, i.e., the time from a label to the publication of the first
+ * batch (or the final aggregation) that aggregates it.
+ */
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class Simulator {
+    /* kinds of events */
+    public static final int ARRIVE = 0; // a worker arrives and makes her first request
+    public static final int REQUEST = 1; // a worker requests a task
+    public static final int LABEL = 2; // a worker completes her label on the assigned task
+    public static final int BATCH = 3; // the aggregated labels of a batch are published
+
+    /* simulation parameters */
+    private ArrivalProcess arrivals; // arrival process of workers
+    private double label_time; // average time in seconds to label a task
+    private double think_time; // average time in seconds between a label and the next request
+    private double batch_time; // time in seconds for a batch to publish its aggregated labels
+
+    /* simulation state */
+    private TDSSA tdssa; // run whose workers label as in the data or the attack
+    private TDSSAEngine engine; // engine serving the workers
+    private Random rand; // random number generator of the run
+    private Worker[] workers; // workers in the order of arrival
+    private int[] budget; // remaining requests of each worker in the order of arrival
+    private EventQueue queue; // pending events
+    private long batch_seen; // number of batches of the engine seen so far
+
+    /* statistics */
+    private long event_num; // number of processed events
+    private long request_num; // number of requests
+    private long batch_num; // number of published batches
+    private double last_time; // time of the previous event
+    private int in_flight; // number of assigned tasks waiting for labels
+    private int max_in_flight; // maximum number of assigned tasks waiting for labels
+    private double in_flight_area; // integral of the number of tasks waiting for labels over time
+    private long pending_num; // number of labels not aggregated by a batch yet
+    private double pending_time; // sum of the times of the labels not aggregated by a batch yet
+    private long published_num; // number of labels aggregated by a batch
+    private double staleness; // sum of the times from labels to the publication of their aggregation
+    private long wall_time; // running time of the simulation in nanoseconds
+
+    /* initialization */
+    public Simulator(TDSSA tdssa, TDSSAEngine engine, List<Worker> order, ArrivalProcess arrivals,
+                     double label_time, double think_time, double batch_time, Random rand) {
+        this.tdssa = tdssa;
+        this.engine = engine;
+        this.arrivals = arrivals;
+        this.label_time = label_time;
+        this.think_time = think_time;
+        this.batch_time = batch_time;
+        this.rand = rand;
+
+        // workers arrive in the order of their first request, with as many requests as in the order
+        Map<Worker, Integer> rank = new HashMap<Worker, Integer>();
+        for (Worker worker : order) {
+            if (!rank.containsKey(worker)) {
+                rank.put(worker, rank.size());
+            }
+        }
+        workers = new Worker[rank.size()];
+        budget = new int[rank.size()];
+        for (Worker worker : order) {
+            int w = rank.get(worker);
+            workers[w] = worker;
+            budget[w]++;
+        }
+        queue = new EventQueue(2 * workers.length);
+    }
+
+    /* process the events until every worker leaves */
+    public void run() {
+        long start = System.nanoTime();
+        if (workers.length > 0) {
+            queue.push(arrivals.next(rand), ARRIVE, 0, 0);
+        }
+        while (queue.pop()) {
+            double now = queue.time();
+            in_flight_area += in_flight * (now - last_time);
+            last_time = now;
+            event_num++;
+            int w = queue.worker();
+            switch (queue.kind()) {
+                case ARRIVE:
+                    // the next worker arrives after a time drawn from the arrival process
+                    if (w + 1 < workers.length) {
+                        queue.push(now + arrivals.next(rand), ARRIVE, w + 1, 0);
+                    }
+                    request(now, w);
+                    break;
+                case REQUEST:
+                    request(now, w);
+                    break;
+                case LABEL:
+                    label(now, w, queue.task());
+                    break;
+                case BATCH:
+                    batch_num++;
+                    break;
+            }
+        }
+        // the labels left are aggregated by the final aggregation at the end
+        staleness += pending_num * last_time - pending_time;
+        published_num += pending_num;
+        pending_num = 0;
+        pending_time = 0;
+        wall_time = System.nanoTime() - start;
+    }
+
+    /* serve the request of a worker */
+    private void request(double now, int w) {
+        Worker worker = workers[w];
+        budget[w]--;
+        request_num++;
+        int task_id = engine.onRequest(worker.getWorkerId());
+        checkBatch(now);
+        if (task_id != TDSSAEngine.NO_TASK) {
+            tdssa.observe(worker, tdssa.getTask(task_id));
+            in_flight++;
+            max_in_flight = Math.max(max_in_flight, in_flight);
+            queue.push(now + exponential(label_time), LABEL, w, task_id);
+        } else if (budget[w] > 0 && !worker.isBanned()) {
+            queue.push(now + exponential(think_time), REQUEST, w, 0);
+        }
+    }
+
+    /* submit the label of a worker on her assigned task */
+    private void label(double now, int w, int task_id) {
+        Worker worker = workers[w];
+        in_flight--;
+        boolean banned = engine.onLabel(worker.getWorkerId(), task_id, tdssa.chooseLabel(worker, tdssa.getTask(task_id)));
+        // the labels of a banned worker are removed, so they are never aggregated
+        if (!banned) {
+            pending_num++;
+            pending_time += now;
+        }
+        checkBatch(now);
+        if (budget[w] > 0 && !banned) {
+            queue.push(now + exponential(think_time), REQUEST, w, 0);
+        }
+    }
+
+    /* publish the labels aggregated by a batch of the engine after the batch time */
+    private void checkBatch(double now) {
+        long batches = engine.getBatchNum();
+        if (batches != batch_seen) {
+            batch_seen = batches;
+            staleness += pending_num * (now + batch_time) - pending_time;
+            published_num += pending_num;
+            pending_num = 0;
+            pending_time = 0;
+            queue.push(now + batch_time, BATCH, 0, 0);
+        }
+    }
+
+    /* return an exponentially distributed time with a mean (0 if the mean is not positive) */
+    private double exponential(double mean) {
+        return mean > 0 ? -Math.log(1 - rand.nextDouble()) * mean : 0;
+    }
+
+    /* return the number of processed events */
+    public long getEventNum() {
+        return event_num;
+    }
+
+    /* return the simulated time in seconds */
+    public double getSimulatedTime() {
+        return last_time;
+    }
+
+    /* return the average number of assigned tasks waiting for labels */
+    public double getInFlight() {
+        return last_time > 0 ? in_flight_area / last_time : 0;
+    }
+
+    /* return the maximum number of assigned tasks waiting for labels */
+    public int getMaxInFlight() {
+        return max_in_flight;
+    }
+
+    /* return the average time in seconds from a label to the publication of its aggregation */
+    public double getStaleness() {
+        return published_num > 0 ? staleness / published_num : 0;
+    }
+
+    /* return the number of published batches */
+    public long getBatchNum() {
+        return batch_num;
+    }
+
+    /* return the number of processed events per second of running time */
+    public double getEventRate() {
+        return wall_time > 0 ? event_num * 1e9 / wall_time : 0;
+    }
+
+    /* return the statistics in one line */
+    public String toString() {
+        return String.format("Events:%d  Simulated:%.1fs  Requests/s:%.3f  In-flight avg/max:%.1f/%d  Batches:%d  Staleness:%.1fs  Events/s:%.0f",
+                event_num, last_time, last_time > 0 ? request_num / last_time : 0, getInFlight(), max_in_flight, batch_num,
+                getStaleness(), getEventRate());
+    }
+}
@@ -0,0 +1,362 @@
+/**
+ * SparseLabels.java provides the sparse labels that every truth discovery engine aggregates
+ * in a full pass. The current labels of the tasks of a pass by the workers of the pass are
+ * held in compressed sparse rows, i.e., a task-to-labels view and a worker-to-labels view of
+ * int arrays, where tasks and workers are identified by their positions in the pass. Next to
+ * the views, flat arrays hold the aggregated labels of the tasks, the Sybil and reliability
+ * scores of the workers, and for each worker her number of assigned tasks and her number of
+ * labels outside the pass (e.g., on golden tasks) that differ from their aggregated labels,
+ * which extended truth discovery counts in her weight. A pass updates the aggregated labels
+ * and sets the weights in these arrays, and apply() writes them to the tasks and workers.
+ *
+ * The labels on the tasks of a pass by workers outside the pass, i.e., the labels of banned
+ * workers on golden tasks in the final pass, which are not revoked, are kept in the task rows
+ * as the votes of outside voters. Voters are numbered after the workers of the pass, take no
+ * part in the worker rows, and keep the Sybil scores and the weights they had before the pass.
+ *
+ * The labels are taken in two steps. copy() only copies the current rows of all tasks out of
+ * the AnswerMatrix with System.arraycopy, along with the aggregated labels and scores, which
+ * is all that a background batch does under the lock of the engine. build() then lays out
+ * the views from the copy. Assignments still waiting for their labels (-1) are left out of
+ * the views. The rows of each task keep the order of its assigned workers, so that weighted
+ * votes are summed in the same order as by the tasks.
+ */
+
+import java.util.Collection;
+
+public class SparseLabels {
+    private int L; // label size
+    private Task[] tasks; // task of each position
+    private Worker[] workers; // worker of each position
+
+    /* copy of the current labels of all tasks */
+    private int[] row_start; // start of the current row of each task ordinal
+    private int[] row_workers; // worker ordinals in the current rows
+    private int[] row_labels; // labels in the current rows
+    private int[] current; // aggregated label of each task ordinal
+    private double[] all_s; // Sybil score of each worker ordinal
+    private double[] all_weights; // weight of each worker ordinal before the pass
+    private boolean built; // whether the views have been built from the copy
+
+    /* state of the pass */
+    private int[] aggregated; // aggregated label of each task (updated by a pass)
+    private int voter_num; // number of workers and outside voters
+    private double[] weights; // weight of each worker (set by a pass) and of each outside voter (fixed)
+    private double[] s; // Sybil score of each worker and outside voter
+    private double[] p; // reliability of each worker on golden tasks
+    private int[] assigned_num; // number of assigned tasks of each worker
+    private int[] outside_errors; // number of labels of each worker outside the pass that differ from their aggregated labels
+
+    /* labels in task rows */
+    private int[] task_start; // start of the row of each task
+    private int[] task_workers; // worker (or outside voter) positions in task rows
+    private int[] task_labels; // labels in task rows
+
+    /* labels in worker rows */
+    private int[] worker_start; // start of the row of each worker
+    private int[] worker_tasks; // task positions in worker rows (ascending in each row)
+    private int[] worker_labels; // labels in worker rows
+
+    /* copy and build the current labels of tasks by workers */
+    public SparseLabels(Collection<Task> task_set, Collection<Worker> worker_set, int L) {
+        this(task_set, worker_set, L, true);
+    }
+
+    /* copy the current labels of tasks by workers, and build the views if asked */
+    private SparseLabels(Collection<Task> task_set, Collection<Worker> worker_set, int L, boolean build) {
+        this.L = L;
+        tasks = task_set.toArray(new Task[0]);
+        workers = worker_set.toArray(new Worker[0]);
+        p = new double[workers.length];
+        assigned_num = new int[workers.length];
+        for (int w = 0; w < workers.length; w++) {
+            p[w] = workers[w].getP();
+            assigned_num[w] = workers[w].getLabeledNum();
+        }
+        if (tasks.length > 0) {
+            AnswerMatrix answers = tasks[0].getAnswers();
+            row_start = new int[answers.getTaskNum() + 1];
+            row_workers = new int[answers.assignedTotal()];
+            row_labels = new int[row_workers.length];
+            answers.copyAssigned(row_start, row_workers, row_labels);
+            current = new int[answers.getTaskNum()];
+            for (int t = 0; t < current.length; t++) {
+                current[t] = answers.getTask(t).getAggregated();
+            }
+            all_s = new double[answers.getWorkerNum()];
+            all_weights = new double[answers.getWorkerNum()];
+            for (int w = 0; w < all_s.length; w++) {
+                all_s[w] = answers.getWorker(w).getS();
+                all_weights[w] = answers.getWorker(w).getWeight();
+            }
+        } else {
+            row_start = new int[1];
+            row_workers = new int[0];
+            row_labels = new int[0];
+            current = new int[0];
+            all_s = new double[0];
+            all_weights = new double[0];
+        }
+        if (build) {
+            build();
+        }
+    }
+
+    /* copy the current labels of tasks by workers without building the views (see build) */
+    public static SparseLabels copy(Collection<Task> task_set, Collection<Worker> worker_set, int L) {
+        return new SparseLabels(task_set, worker_set, L, false);
+    }
+
+    /* build the views and the state of the pass from the copy (once) */
+    public void build() {
+        if (built) {
+            return;
+        }
+        built = true;
+        int worker_num = all_s.length;
+        int[] position = new int[worker_num]; // position of each worker ordinal plus one (0 means outside the pass)
+        for (int w = 0; w < workers.length; w++) {
+            position[workers[w].getIndex()] = w + 1;
+        }
+        boolean[] inside = new boolean[current.length]; // whether each task ordinal is in the pass
+        aggregated = new int[tasks.length];
+        for (int t = 0; t < tasks.length; t++) {
+            inside[tasks[t].getIndex()] = true;
+            aggregated[t] = current[tasks[t].getIndex()];
+        }
+
+        // count the labels of each task and each worker, and the errors outside the pass
+        task_start = new int[tasks.length + 1];
+        worker_start = new int[workers.length + 1];
+        outside_errors = new int[workers.length];
+        for (int ordinal = 0; ordinal < current.length; ordinal++) {
+            if (inside[ordinal]) {
+                continue;
+            }
+            for (int i = row_start[ordinal]; i < row_start[ordinal + 1]; i++) {
+                int w = row_workers[i];
+                int label = row_labels[i];
+                if (label != -1 && label != current[ordinal] && position[w] != 0) {
+                    outside_errors[position[w] - 1]++;
+                }
+            }
+        }
+        voter_num = workers.length;
+        for (int t = 0; t < tasks.length; t++) {
+            int ordinal = tasks[t].getIndex();
+            int label_num = 0;
+            for (int i = row_start[ordinal]; i < row_start[ordinal + 1]; i++) {
+                int w = row_workers[i];
+                if (row_labels[i] == -1) {
+                    continue;
+                }
+                label_num++;
+                if (position[w] > 0) {
+                    worker_start[position[w]]++;
+                } else if (position[w] == 0) {
+                    // an outside voter is numbered on her first label, marked by a negative position
+                    position[w] = -(++voter_num);
+                }
+            }
+            task_start[t + 1] = task_start[t] + label_num;
+        }
+        for (int w = 0; w < workers.length; w++) {
+            worker_start[w + 1] += worker_start[w];
+        }
+
+        // the Sybil scores of all voters and the fixed weights of outside voters
+        s = new double[voter_num];
+        weights = new double[voter_num];
+        for (int w = 0; w < worker_num; w++) {
+            if (position[w] > 0) {
+                s[position[w] - 1] = all_s[w];
+            } else if (position[w] < 0) {
+                s[-position[w] - 1] = all_s[w];
+                weights[-position[w] - 1] = all_weights[w];
+            }
+        }
+
+        // fill the task rows, and the worker rows in the order of task positions
+        task_workers = new int[task_start[tasks.length]];
+        task_labels = new int[task_start[tasks.length]];
+        worker_tasks = new int[worker_start[workers.length]];
+        worker_labels = new int[worker_start[workers.length]];
+        int[] next = new int[workers.length];
+        System.arraycopy(worker_start, 0, next, 0, workers.length);
+        int k = 0;
+        for (int t = 0; t < tasks.length; t++) {
+            int ordinal = tasks[t].getIndex();
+            for (int i = row_start[ordinal]; i < row_start[ordinal + 1]; i++) {
+                int w = row_workers[i];
+                int label = row_labels[i];
+                if (label == -1) {
+                    continue;
+                }
+                task_labels[k] = label;
+                if (position[w] > 0) {
+                    task_workers[k] = position[w] - 1;
+                    int j = next[position[w] - 1]++;
+                    worker_tasks[j] = t;
+                    worker_labels[j] = label;
+                } else {
+                    task_workers[k] = -position[w] - 1;
+                }
+                k++;
+            }
+        }
+        row_workers = null;
+        row_labels = null;
+        all_s = null;
+        all_weights = null;
+    }
+
+    /* return the number of tasks */
+    public int getTaskNum() {
+        return tasks.length;
+    }
+
+    /* return the number of workers */
+    public int getWorkerNum() {
+        return workers.length;
+    }
+
+    /* return the number of workers and outside voters, where outside voters are numbered after the workers */
+    public int getVoterNum() {
+        return voter_num;
+    }
+
+    /* return the number of labels */
+    public int getLabelNum() {
+        return task_start[tasks.length];
+    }
+
+    /* return the start of the task's row */
+    public int taskStart(int t) {
+        return task_start[t];
+    }
+
+    /* return the end of the task's row */
+    public int taskEnd(int t) {
+        return task_start[t + 1];
+    }
+
+    /* return the worker (or outside voter) position at a position of task rows */
+    public int taskWorker(int i) {
+        return task_workers[i];
+    }
+
+    /* return the label at a position of task rows */
+    public int taskLabel(int i) {
+        return task_labels[i];
+    }
+
+    /* return the start of the worker's row */
+    public int workerStart(int w) {
+        return worker_start[w];
+    }
+
+    /* return the end of the worker's row */
+    public int workerEnd(int w) {
+        return worker_start[w + 1];
+    }
+
+    /* return the task position at a position of worker rows */
+    public int workerTask(int i) {
+        return worker_tasks[i];
+    }
+
+    /* return the label at a position of worker rows */
+    public int workerLabel(int i) {
+        return worker_labels[i];
+    }
+
+    /* return the aggregated label of each task, which a pass updates in place (the labels before the pass at first) */
+    public int[] getAggregated() {
+        return aggregated;
+    }
+
+    /* return the weight of each worker, which a pass sets in place, followed by the fixed weight of each outside voter */
+    public double[] getWeights() {
+        return weights;
+    }
+
+    /* return the Sybil score of a worker or an outside voter */
+    public double getS(int w) {
+        return s[w];
+    }
+
+    /* return the reliability of a worker on golden tasks */
+    public double getP(int w) {
+        return p[w];
+    }
+
+    /* return the number of tasks assigned to a worker, including those outside the pass and those not labeled yet */
+    public int getAssignedNum(int w) {
+        return assigned_num[w];
+    }
+
+    /* return the number of labels of a worker outside the pass that differ from their aggregated labels */
+    public int getOutsideErrors(int w) {
+        return outside_errors[w];
+    }
+
+    /* aggregate each task by the votes of the workers and outside voters on its labels and return the number of
+       changed aggregated labels */
+    public int vote(double[] worker_votes, int[] aggregated) {
+        return vote(worker_votes, aggregated, 0, tasks.length, new double[L]);
+    }
+
+    /* aggregate a range of tasks by the votes of the workers and outside voters on their labels, summed in a reusable
+       vector, and return the number of changed aggregated labels */
+    public int vote(double[] worker_votes, int[] aggregated, int from, int to, double[] votes) {
+        int difference = 0;
+        for (int t = from; t < to; t++) {
+            for (int l = 0; l < L; l++) {
+                votes[l] = 0;
+            }
+            for (int i = task_start[t]; i < task_start[t + 1]; i++) {
+                votes[task_labels[i]] += worker_votes[task_workers[i]];
+            }
+            int label = choose(votes);
+            if (label != -1 && label != aggregated[t]) {
+                aggregated[t] = label;
+                difference++;
+            }
+        }
+        return difference;
+    }
+
+    /* return the first label with the most votes (-1 if no vote is comparable) */
+    public int choose(double[] votes) {
+        int label = -1;
+        double max_vote = -1;
+        for (int l = 0; l < votes.length; l++) {
+            if (votes[l] > max_vote) {
+                label = l;
+                max_vote = votes[l];
+            }
+        }
+        return label;
+    }
+
+    /* return the number of labels of a worker in the pass that differ from the aggregated labels */
+    public int errors(int w, int[] aggregated) {
+        int errors = 0;
+        for (int i = worker_start[w]; i < worker_start[w + 1]; i++) {
+            if (worker_labels[i] != aggregated[worker_tasks[i]]) {
+                errors++;
+            }
+        }
+        return errors;
+    }
+
+    /* set the aggregated labels of the tasks and the weights of the workers from the pass */
+    public void apply() {
+        for (int t = 0; t < tasks.length; t++) {
+            tasks[t].setAggregated(aggregated[t]);
+        }
+        for (int w = 0; w < workers.length; w++) {
+            workers[w].setWeight(weights[w]);
+        }
+    }
+}
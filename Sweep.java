@@ -0,0 +1,313 @@
+/**
+ * Sweep.java runs TDSSA over a grid of parameters in one process. Each of the parameters B,
+ * alpha, tau, delta, mu, epsilon and lambda is given as a comma-separated list, and every
+ * combination is a point of the grid. Points with the same attack (mu, epsilon, lambda)
+ * share one preprocessing and one loaded dataset, so the attack and order of each run are
+ * generated and read once for all of them, and the labels of a real dataset are read once
+ * for all attacks. The attacks are swept one after another, and each attack is formalized
+ * into a folder of its own, i.e., its cached folder with tdssa.cache and tdssa.seed, or a
+ * new folder under "cache" that is deleted after its runs otherwise, so that the data.bin
+ * still mapped by the dataset of an earlier attack is never rewritten. The (point, run)
+ * pairs of an attack are executed on a thread pool. The result of each (point, run) pair is
+ * appended to "sweep.csv" in the dataset folder as soon as it completes, and a sweep that is
+ * started again skips the pairs already in the file, so an interrupted sweep resumes where
+ * it stopped. As with TDSSA, the runs of a point continue the worker features of the
+ * previous run unless tdssa.isolated is set, so a point with a missing run is run again from
+ * its first run, and only the missing rows are written. The runs of a point then run one
+ * after another whatever the number of threads (tdssa.threads, 1 by default), so the number
+ * of threads never changes the results. The data and the runs are generated again when a
+ * sweep resumes (or reused from the cache with tdssa.cache), so tdssa.seed should be set
+ * for the resumed results to match.
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Sweep {
+    public static final String RESULTS = "sweep.csv"; // name of the results file in the dataset folder
+    private static final String HEADER = "B,alpha,tau,delta,mu,epsilon,lambda,run,a_accuracy,e_number,t_cost,attack_got_reward,time_ms"; // columns of the results file
+
+    /**
+     * Point is a combination of the parameters in the grid.
+     */
+    private static class Point {
+        int B; // condition for terminating a batch
+        double alpha; // probability to assign a golden task to a new worker
+        double tau; // Sybil threshold for banning workers
+        double delta; // reliability threshold for marking reliable workers
+        double mu; // percentage of Sybil workers
+        double epsilon; // probability for Sybil workers to deviate from sharing
+        int lambda; // number of attackers
+
+        /* initialization */
+        Point(int B, double alpha, double tau, double delta, double mu, double epsilon, int lambda) {
+            this.B = B;
+            this.alpha = alpha;
+            this.tau = tau;
+            this.delta = delta;
+            this.mu = mu;
+            this.epsilon = epsilon;
+            this.lambda = lambda;
+        }
+
+        /* return the parameters in the columns of the results file */
+        String key() {
+            return B + "," + alpha + "," + tau + "," + delta + "," + mu + "," + epsilon + "," + lambda;
+        }
+
+        /* return the attack parameters shared by the points of a preprocessing */
+        String attack() {
+            return mu + "," + epsilon + "," + lambda;
+        }
+    }
+
+    private String dataset; // name of the dataset
+    private int run_num; // number of runs of each point
+    private String[] synthetic; // data parameters N, M, L, K and theta of synthetic datasets (null for real datasets)
+    private boolean isolated; // whether the runs of a point are independent
+    private int threads; // number of (point, run) pairs executed at the same time
+    private ForkJoinPool etd_pool; // pool for parallel extended truth discovery (null means sequential)
+    private Long seed; // seed of the data and the runs (null means unseeded)
+    private String td_kind; // kind of truth discovery of the runs
+    private Preprocess real; // preprocessing of a real dataset, reading its labels once (null until the first attack)
+    private boolean staged; // whether each attack is formalized into a new folder that is deleted after its runs
+    private Set<String> done; // (point, run) pairs in the results file
+    private BufferedWriter results; // results file opened for appending
+    private AtomicInteger completed; // number of completed (point, run) pairs in this sweep
+
+    /* initialization */
+    public Sweep(String dataset, int run_num, String[] synthetic) {
+        this.dataset = dataset;
+        this.run_num = run_num;
+        this.synthetic = synthetic;
+        // as in TDSSA, the number of threads never makes the runs isolated, so it does not change the results
+        threads = Math.max(1, Integer.getInteger("tdssa.threads", 1));
+        isolated = Boolean.getBoolean("tdssa.isolated");
+        int etd_parallelism = Integer.getInteger("tdssa.etd.parallelism", 1);
+        etd_pool = etd_parallelism > 1 ? new ForkJoinPool(etd_parallelism) : null;
+        seed = Long.getLong("tdssa.seed");
+        // only a seeded preprocessing has a cached folder of its own, see Preprocess.formalizeCached
+        staged = !Boolean.getBoolean("tdssa.cache") || seed == null;
+        td_kind = System.getProperty("tdssa.td", "etd");
+        TruthDiscovery.of(td_kind, 2); // an unknown kind is rejected before the sweep
+        done = new HashSet<String>();
+        completed = new AtomicInteger();
+    }
+
+    /* return the points of the grid, where the points of an attack are consecutive */
+    private static ArrayList<Point> grid(String B, String alpha, String tau, String delta, String mu, String epsilon, String lambda) {
+        ArrayList<Point> points = new ArrayList<Point>();
+        for (String m : mu.split(",")) {
+            for (String e : epsilon.split(",")) {
+                for (String l : lambda.split(",")) {
+                    for (String b : B.split(",")) {
+                        for (String a : alpha.split(",")) {
+                            for (String t : tau.split(",")) {
+                                for (String d : delta.split(",")) {
+                                    points.add(new Point(Integer.parseInt(b.trim()), Double.parseDouble(a.trim()), Double.parseDouble(t.trim()),
+                                            Double.parseDouble(d.trim()), Double.parseDouble(m.trim()), Double.parseDouble(e.trim()), Integer.parseInt(l.trim())));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return points;
+    }
+
+    /* read the (point, run) pairs in the results file, ignoring a row cut off by an interrupted sweep */
+    private void readResults(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        boolean cut = bytes.length > 0 && bytes[bytes.length - 1] != '\n';
+        String[] lines = new String(bytes).split("\n");
+        int line_num = cut ? lines.length - 1 : lines.length;
+        for (int i = 0; i < line_num; i++) {
+            String[] elements = lines[i].split(",");
+            if (elements.length != HEADER.split(",").length || lines[i].equals(HEADER)) {
+                continue;
+            }
+            try {
+                Point point = new Point(Integer.parseInt(elements[0]), Double.parseDouble(elements[1]), Double.parseDouble(elements[2]),
+                        Double.parseDouble(elements[3]), Double.parseDouble(elements[4]), Double.parseDouble(elements[5]), Integer.parseInt(elements[6]));
+                done.add(point.key() + "," + Integer.parseInt(elements[7]));
+            } catch (NumberFormatException e) {
+                // a malformed row is run again
+            }
+        }
+        // the next row starts on a line of its own
+        if (cut) {
+            BufferedWriter w = new BufferedWriter(new FileWriter(file, true));
+            w.write("\n");
+            w.close();
+        }
+    }
+
+    /* run every (point, run) pair of the grid that is not in the results file */
+    private void run(ArrayList<Point> points) throws Exception {
+        File file = new File(dataset + "//" + RESULTS);
+        readResults(file);
+        boolean header = !file.exists() || file.length() == 0;
+        results = new BufferedWriter(new FileWriter(file, true));
+        if (header) {
+            results.write(HEADER + "\n");
+            results.flush();
+        }
+
+        LinkedHashMap<String, ArrayList<Point>> attacks = new LinkedHashMap<String, ArrayList<Point>>();
+        for (Point point : points) {
+            attacks.computeIfAbsent(point.attack(), key -> new ArrayList<Point>()).add(point);
+        }
+        int total = points.size() * run_num;
+        for (ArrayList<Point> attack : attacks.values()) {
+            ArrayList<Point> pending = new ArrayList<Point>(); // points with a missing run
+            for (Point point : attack) {
+                for (int r = 0; r < run_num; r++) {
+                    if (!done.contains(point.key() + "," + r)) {
+                        pending.add(point);
+                        break;
+                    }
+                }
+            }
+            if (pending.isEmpty()) {
+                completed.addAndGet(attack.size() * run_num);
+                continue;
+            }
+            Dataset data = preprocess(attack.get(0));
+
+            // the pairs are submitted run by run, so that the previous run of a point has usually completed
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            ArrayList<Future<TDSSA>> previous = new ArrayList<Future<TDSSA>>(); // latest submitted run of each pending point
+            for (int p = 0; p < pending.size(); p++) {
+                previous.add(null);
+            }
+            for (int r = 0; r < run_num; r++) {
+                for (int p = 0; p < pending.size(); p++) {
+                    Point point = pending.get(p);
+                    int run = r;
+                    if (isolated && done.contains(point.key() + "," + r)) {
+                        completed.incrementAndGet();
+                        continue;
+                    }
+                    Future<TDSSA> last = isolated ? null : previous.get(p);
+                    previous.set(p, executor.submit(() -> run(point, run, data, last, total)));
+                }
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            completed.addAndGet((attack.size() - pending.size()) * run_num);
+            if (staged) {
+                Preprocess.discard(data.getFolder());
+            }
+        }
+        results.close();
+        if (etd_pool != null) {
+            etd_pool.shutdown();
+        }
+    }
+
+    /* preprocess the dataset with the attack of a point and load it */
+    private Dataset preprocess(Point point) {
+        Preprocess pre;
+        if (synthetic == null) {
+            if (real == null) {
+                real = new Preprocess(dataset, run_num, point.mu, point.epsilon, point.lambda);
+            }
+            pre = real;
+            pre.setAttack(point.mu, point.epsilon, point.lambda);
+        } else {
+            pre = new Preprocess(dataset, run_num, point.mu, point.epsilon, point.lambda, Integer.parseInt(synthetic[0]),
+                    Integer.parseInt(synthetic[1]), Integer.parseInt(synthetic[2]), Integer.parseInt(synthetic[3]), Double.parseDouble(synthetic[4]));
+            pre.setPartitions(Math.max(1, Integer.getInteger("tdssa.syn.partitions", 1)));
+        }
+        if (seed != null) {
+            pre.setSeed(seed);
+        }
+        if (Boolean.getBoolean("tdssa.runs.seeded")) {
+            pre.setRunSeed(seed != null ? seed : new Random().nextLong());
+        }
+        // each attack is formalized into a folder of its own, as the data.bin of the previous attack may still be mapped
+        String folder = staged ? pre.formalizeStaged() : pre.formalizeCached(); // folder of the formalized data (null if the preprocessing failed)
+        if (folder == null) {
+            throw new IllegalStateException("Preprocessing of " + dataset + " failed");
+        }
+        return new Dataset(dataset, folder);
+    }
+
+    /* execute a run of a point after the previous run (null for the first run or isolated runs), and return it (null if it fails) */
+    private TDSSA run(Point point, int run, Dataset data, Future<TDSSA> last, int total) {
+        try {
+            TDSSA tdssa = new TDSSA(point.B, point.alpha, point.tau, point.delta, data);
+            tdssa.setTruthDiscovery(td_kind);
+            tdssa.setIncrementalETD(Boolean.getBoolean("tdssa.etd.incremental"));
+            tdssa.setETDPool(etd_pool);
+            tdssa.setBackgroundETD(Boolean.getBoolean("tdssa.etd.background"));
+            tdssa.setRewardTier(Integer.getInteger("tdssa.stdel.tier", TDSSA.REWARD_TIER));
+            if (seed != null) {
+                tdssa.setSeed(seed ^ (run * 0x9E3779B97F4A7C15L));
+            }
+            tdssa.readAttack(data.getFolder(), run);
+            tdssa.readOrder(data.getFolder(), run);
+            // the attack and the order do not depend on the carried features, so they are read before waiting
+            if (last != null) {
+                TDSSA previous = last.get();
+                if (previous == null) {
+                    // the previous run failed, so the later runs of the point are not run
+                    return null;
+                }
+                tdssa.inherit(previous);
+            }
+            tdssa.run();
+            String key = point.key() + "," + run;
+            if (!done.contains(key)) {
+                record(key + "," + tdssa.getAAccuracy() + "," + tdssa.getENumber() + "," + tdssa.getTCost() + ","
+                        + tdssa.getAttackGotReward() + "," + tdssa.getRunningTime(), total);
+            } else {
+                completed.incrementAndGet();
+            }
+            return tdssa;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /* append a row to the results file at once, so that an interrupted sweep loses no completed pair */
+    private synchronized void record(String row, int total) throws IOException {
+        results.write(row + "\n");
+        results.flush();
+        System.out.println("[" + completed.incrementAndGet() + "/" + total + "] " + row);
+    }
+
+    /* main function, where B, alpha, tau, delta, mu, epsilon and lambda are comma-separated lists */
+    public static void main(String[] args) {
+        if (args.length != 9 && args.length != 14) {
+            System.out.println("Invalid number of parameters!");
+            System.exit(0);
+        }
+        try {
+            ArrayList<Point> points = grid(args[2], args[3], args[4], args[5], args[6], args[7], args[8]);
+            String[] synthetic = args.length == 14 ? new String[]{args[9], args[10], args[11], args[12], args[13]} : null;
+            new Sweep(args[0], Integer.parseInt(args[1]), synthetic).run(points);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
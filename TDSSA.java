@@ -2,15 +2,29 @@
  * TDSSA.java is the main framework that coordinates the probabilistic task assignment and
  * extended truth discovery to deal with different worker activities for defending against
  * strategic Sybil attack. The statistics about Accuracy, Cost, Completion and running time
- * would be saved in a "result.txt" file.
+ * would be saved in a "result.txt" file. Each TDSSA object holds the tasks and workers of a
+ * single run on a shared dataset, so that the runs can be executed in parallel. A run that
+ * replays its requesting order can write checkpoints of its state and be resumed from them.
  */
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.commons.math3.distribution.TDistribution;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 
 public class TDSSA {
     /* TDSSA parameters */
@@ -18,8 +32,14 @@ public class TDSSA {
     private double alpha; // probability to assign a golden task to a new worker
     private double tau; // Sybil threshold for banning workers
     private double delta; // reliability threshold for marking reliable workers
+    private String td_kind = "etd"; // kind of truth discovery (see TruthDiscovery.of)
+    private boolean incremental_etd; // whether batches run the incremental mode of extended truth discovery
+    private ForkJoinPool etd_pool; // pool for parallel extended truth discovery (null means sequential)
+    private boolean background_etd; // whether batches are aggregated on a background thread
+    private boolean instrumented; // whether the phases of the engine are timed
 
     /* dataset parameters */
+    private Dataset data; // shared dataset of the run
     private ArrayList<Worker> order; // requesting order of workers;
     private int L; // label size
     private int K; // number of workers per task
@@ -28,32 +48,74 @@ public class TDSSA {
     private double epsilon;
     private int lambda;
 
+    /* deference parameters */
+    public static final int REWARD_TIER = 13; // default tier boundary: rewards up to it are low rewards
+
     /* ID mapping */
     private Map<Integer, Task> id_to_task; // ID to normal task mapping
     private Map<Integer, Worker> id_to_worker; // ID to worker mapping
-    private Map<Integer, Task> id_to_golden; // ID to golden task mapping
+    private Map<Integer, Task> id_to_golden; // ID to golden task mapping (including promoted tasks)
+    private Map<Integer, Task> id_to_original; // ID to original golden task mapping
     private Map<Integer, Attacker> id_to_attacker; // ID to attacker mapping
+    private AnswerMatrix answers; // original and current labels of workers on tasks
 
     /* evaluation parameters */
     private double a_accuracy; // aggregation accuracy
     private double e_number; // average number of exposed golden tasks
     private double t_cost; // average number of golden task assignment for testing each worker
     private long running_time; // running time of TDSSA in millisecond
+    private TDSSAEngine.Metrics metrics; // numbers of activities and latencies of the engine of the run
+    private Simulator simulator; // discrete-event simulation of the run (null if the requesting order is replayed)
+
+    /* run state */
+    private boolean seeded; // whether the random number generator of the run is seeded
+    private long seed; // seed of the random number generator of the run
+    private RunRandom rand; // random number generator of the run
+
+    /* checkpoints */
+    private String checkpoint; // file of the checkpoints of the run (null means no checkpoints)
+    private int checkpoint_interval; // number of requests between two checkpoints
+    private String resume; // checkpoint to resume the run from (null means the run starts from the first request)
+    private boolean reseed; // whether a resumed run draws random numbers from its own seed instead of the checkpoint
 
     //new
     private int attackGotReward = 0; //attack got reward
 
 
-    public TDSSA(int B, double alpha, double tau, double delta) {
+    /* create the tasks and workers of a run on a dataset */
+    public TDSSA(int B, double alpha, double tau, double delta, Dataset data) {
         this.B = B;
         this.alpha = alpha;
         this.tau = tau;
         this.delta = delta;
+        this.data = data;
+        L = data.getL();
+        K = data.getK();
         order = new ArrayList<Worker>();
         id_to_task = new HashMap<Integer, Task>();
         id_to_worker = new HashMap<Integer, Worker>();
         id_to_golden = new HashMap<Integer, Task>();
+        id_to_original = new HashMap<Integer, Task>();
         id_to_attacker = new HashMap<Integer, Attacker>();
+        answers = new AnswerMatrix(data.getAnswers());
+        for (int t = 0; t < data.getTaskNum(); t++) {
+            Task task = new Task(data.getTaskId(t), data.getTrueLabel(t), L);
+            task.setTask_reward(data.getTaskReward(t));
+            task.setHighReward(data.getTaskReward(t) > REWARD_TIER);
+            answers.addTask(task);
+            if (data.isGolden(t)) {
+                task.setRole(Task.GOLDEN);
+                id_to_original.put(task.getTaskId(), task);
+                id_to_golden.put(task.getTaskId(), task);
+            } else {
+                id_to_task.put(task.getTaskId(), task);
+            }
+        }
+        for (int w = 0; w < data.getWorkerNum(); w++) {
+            Worker worker = new Worker(data.getWorkerId(w));
+            answers.addWorker(worker);
+            id_to_worker.put(worker.getWorkerId(), worker);
+        }
         a_accuracy = 0.0;
         e_number = 0.0;
         t_cost = 0.0;
@@ -62,118 +124,17 @@ public class TDSSA {
         attackGotReward = 0;
     }
 
-    /* read worker labels on normal tasks */
-    public void readNormal(String dataset) {
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader(dataset + "//input.txt"));
-            String line = reader.readLine();
-            String[] elements = line.split("\t");
-            L = Integer.parseInt(elements[2]);
-            K = Integer.parseInt(elements[3]);
-            line = reader.readLine();
-
-            //new
-            int c = 0; //record nums of task
-
-            while (line != null) {
-                elements = line.split("\t");
-                int task_id = Integer.parseInt(elements[0]);
-                int true_label = Integer.parseInt(elements[1]);
-                int worker_num = Integer.parseInt(elements[2]);
-                Task task = new Task(task_id, true_label, L);
-
-                //new
-                //NLP
-                if (dataset.equals("NLP")) {
-                    if (c <= 23) {
-                        task.setTask_reward(5);
-                    } else if (c <= 159) {
-                        task.setTask_reward(13);
-                    } else if (c <= 500) {
-                        task.setTask_reward(24);
-                    } else if (c <= 841) {
-                        task.setTask_reward(38);
-                    } else if (c <= 977) {
-                        task.setTask_reward(55);
-                    } else {
-                        task.setTask_reward(75);
-                    }
-                } else if (dataset.equals("DOG")) {
-                    //DOG
-                    if (c <= 19) {
-                        task.setTask_reward(5);
-                    } else if (c <= 129) {
-                        task.setTask_reward(13);
-                    } else if (c <= 404) {
-                        task.setTask_reward(24);
-                    } else if (c <= 679) {
-                        task.setTask_reward(38);
-                    } else if (c <= 789) {
-                        task.setTask_reward(55);
-                    } else {
-                        task.setTask_reward(75);
-                    }
-                }
-
-                c++;
-
-                id_to_task.put(task_id, task);
-                for (int i = 0; i < worker_num; i++) {
-                    int worker_id = Integer.parseInt(elements[2 * i + 3]);
-                    int answer = Integer.parseInt(elements[2 * i + 4]);
-                    if (!id_to_worker.containsKey(worker_id)) {
-                        Worker worker = new Worker(worker_id);
-                        id_to_worker.put(worker_id, worker);
-                        worker.addPair(task, answer);
-                        task.addWorker(worker);
-                    } else {
-                        Worker worker = id_to_worker.get(worker_id);
-                        worker.addPair(task, answer);
-                        task.addWorker(worker);
-                    }
-                }
-                line = reader.readLine();
-            }
-            reader.close();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
-    /* read worker labels on golden tasks */
-    public void readGolden(String dataset) {
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader(dataset + "//golden.txt"));
-            String line = reader.readLine();
-            int golden_num = Integer.parseInt(line);
-            line = reader.readLine();
-            String[] elements = line.split("\t");
-            for (int i = 0; i < golden_num; i++) {
-                int golden_id = Integer.parseInt(elements[i * 2]);
-                Task task = new Task(golden_id, Integer.parseInt(elements[i * 2 + 1]), L);
-                id_to_golden.put(golden_id, task);
-            }
-            line = reader.readLine();
-            while (line != null) {
-                elements = line.split("\t");
-                int worker_id = Integer.parseInt(elements[0]);
-                Worker worker = id_to_worker.get(worker_id);
-                for (int i = 0; i < golden_num; i++) {
-                    int golden_id = Integer.parseInt(elements[i * 2 + 1]);
-                    Task task = id_to_golden.get(golden_id);
-                    int answer = Integer.parseInt(elements[i * 2 + 2]);
-                    worker.addPair(task, answer);
-                }
-                line = reader.readLine();
-            }
-            reader.close();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
     /* read Sybil workers of each attacker for the rth run */
     public void readAttack(String dataset, int r) {
+        if (data.hasSeededRuns()) {
+            generateAttack(data.getRunRandom(r, Dataset.ATTACK));
+            return;
+        }
+        ByteBuffer in = data.getAttack(r);
+        if (in != null) {
+            readAttack(in);
+            return;
+        }
         try {
             id_to_attacker = new HashMap<Integer, Attacker>();
             BufferedReader reader = new BufferedReader(new FileReader(dataset + "//" + r + "//attack.txt"));
@@ -186,7 +147,7 @@ public class TDSSA {
                 elements = line.split("\t");
                 int attacker_id = Integer.parseInt(elements[0]);
                 int task_num = Integer.parseInt(elements[1]);
-                Attacker attacker = new Attacker(attacker_id, K, L);
+                Attacker attacker = new Attacker(attacker_id, K, L, answers.getTaskNum());
                 id_to_attacker.put(attacker_id, attacker);
                 for (int j = 0; j < task_num; j++) {
                     int task_id = Integer.parseInt(elements[2 * j + 2]);
@@ -214,8 +175,51 @@ public class TDSSA {
         }
     }
 
+    /* read attack information from the attack part of a run in the binary file */
+    private void readAttack(ByteBuffer in) {
+        id_to_attacker = new HashMap<Integer, Attacker>();
+        epsilon = in.getDouble();
+        lambda = in.getInt();
+        for (int i = 0; i < lambda; i++) {
+            int attacker_id = in.getInt();
+            int task_num = in.getInt();
+            Attacker attacker = new Attacker(attacker_id, K, L, answers.getTaskNum());
+            id_to_attacker.put(attacker_id, attacker);
+            int tasks = in.position(); // start of the column of task IDs
+            for (int j = 0; j < task_num; j++) {
+                int task_id = in.getInt(tasks + 4 * j);
+                int label = in.getInt(tasks + 4 * (task_num + j));
+                if (id_to_task.containsKey(task_id)) {
+                    attacker.setTaskLabel(id_to_task.get(task_id), label);
+                } else {
+                    attacker.setTaskLabel(id_to_golden.get(task_id), label);
+                }
+            }
+            in.position(tasks + 8 * task_num);
+            int worker_num = in.getInt();
+            for (int j = 0; j < worker_num; j++) {
+                Worker worker = id_to_worker.get(in.getInt());
+                attacker.addWorker(worker);
+                worker.setAttackerID(attacker_id);
+            }
+        }
+    }
+
     /* read requesting order of workers for the rth run */
     public void readOrder(String dataset, int r) {
+        if (data.hasSeededRuns()) {
+            generateOrder(data.getRunRandom(r, Dataset.ORDER));
+            return;
+        }
+        ByteBuffer in = data.getOrder(r);
+        if (in != null) {
+            order = new ArrayList<Worker>();
+            int request_num = in.getInt();
+            for (int i = 0; i < request_num; i++) {
+                order.add(id_to_worker.get(in.getInt()));
+            }
+            return;
+        }
         try {
             order = new ArrayList<Worker>();
             BufferedReader reader = new BufferedReader(new FileReader(dataset + "//" + r + "//order.txt"));
@@ -231,113 +235,204 @@ public class TDSSA {
         }
     }
 
+    /* replace mu percentage of independent workers with Sybil workers of lambda attackers in a seeded run (see Preprocess.replace) */
+    private void generateAttack(SplittableRandom rand) {
+        id_to_attacker = new HashMap<Integer, Attacker>();
+        epsilon = data.getEpsilon();
+        lambda = data.getLambda();
+        int worker_num = answers.getWorkerNum();
+        int num = (int) Math.ceil(worker_num * data.getMu());
+        int[] attacker_Sybil_num = new int[lambda];
+        for (int i = 0; i < lambda; i++) {
+            attacker_Sybil_num[i] = num / lambda;
+        }
+        attacker_Sybil_num[lambda - 1] = num - attacker_Sybil_num[0] * (lambda - 1);
+
+        // Sybil workers are drawn by a partial shuffle of worker ordinals
+        int[] workers = new int[worker_num];
+        for (int w = 0; w < worker_num; w++) {
+            workers[w] = w;
+        }
+        int drawn = 0;
+        for (int i = 0; i < lambda; i++) {
+            Attacker attacker = new Attacker(i, K, L, answers.getTaskNum());
+            // randomized labels are drawn when the attacker first labels a task
+            attacker.randomize(rand.nextLong());
+            id_to_attacker.put(i, attacker);
+            for (int j = 0; j < attacker_Sybil_num[i]; j++, drawn++) {
+                int k = drawn + rand.nextInt(worker_num - drawn);
+                int w = workers[k];
+                workers[k] = workers[drawn];
+                workers[drawn] = w;
+                Worker worker = answers.getWorker(w);
+                attacker.addWorker(worker);
+                worker.setAttackerID(i);
+            }
+        }
+    }
+
+    /* randomize the requesting order of workers in a seeded run, where each worker requests once for each
+     * of her normal tasks and once for each golden task */
+    private void generateOrder(SplittableRandom rand) {
+        int golden_num = id_to_original.size();
+        int request_num = 0;
+        for (int w = 0; w < answers.getWorkerNum(); w++) {
+            request_num += normalNum(w) + golden_num;
+        }
+        int[] requests = new int[request_num];
+        int i = 0;
+        for (int w = 0; w < answers.getWorkerNum(); w++) {
+            for (int j = normalNum(w) + golden_num; j > 0; j--) {
+                requests[i++] = w;
+            }
+        }
+        order = new ArrayList<Worker>(request_num);
+        for (i = request_num - 1; i >= 0; i--) {
+            int k = rand.nextInt(i + 1);
+            int w = requests[k];
+            requests[k] = requests[i];
+            order.add(answers.getWorker(w));
+        }
+    }
+
+    /* return the number of normal tasks of a worker in the original data */
+    private int normalNum(int w) {
+        int normal_num = 0;
+        for (int i = answers.workerStart(w); i < answers.workerEnd(w); i++) {
+            if (answers.getTask(answers.workerTask(i)).isNormal()) {
+                normal_num++;
+            }
+        }
+        return normal_num;
+    }
+
+    /* open the run as an engine that serves the activities of workers in real time */
+    public TDSSAEngine open() {
+        rand = seeded ? new RunRandom(seed) : new RunRandom();
+        TDSSAEngine engine = new TDSSAEngine(data, answers, id_to_task, id_to_golden, id_to_worker, B, alpha, tau, delta, rand);
+        engine.setTruthDiscovery(td_kind);
+        engine.setETDPool(etd_pool);
+        engine.setIncrementalETD(incremental_etd);
+        engine.setBackgroundBatches(background_etd);
+        engine.setInstrumented(instrumented);
+        return engine;
+    }
+
+    /* replay the requesting order of the run as a client of the engine, where workers label as in the data or the attack */
     public void run() {
-        Set<Worker> workers = new HashSet<Worker>(); // current workers in U
-        int promotion_num = 0; // number of completed tasks that can be promoted
-        int gold_num = 0; // number of golden task assignment
-        ExtendedTD etd = new ExtendedTD(L); // extended truth discovery
-        ProbabilisticTA pta = new ProbabilisticTA(tau, delta, alpha, K); // probabilistic task assignment
+        TDSSAEngine engine = open();
+        int position = 0; // position in the requesting order of the first request
+        long elapsed = 0; // running time before the first request in nanoseconds
+        if (resume != null) {
+            try {
+                Checkpoint resumed = Checkpoint.read(resume, this, engine);
+                position = resumed.getPosition();
+                elapsed = resumed.getElapsed();
+            } catch (IOException e) {
+                throw new IllegalStateException("Checkpoint " + resume + " cannot be read", e);
+            }
+        }
 
-        long startTime = System.nanoTime();
+        long startTime = System.nanoTime() - elapsed;
         // respond to different worker activity
-        for (Worker worker : order) {
+        for (int i = position; i < order.size(); i++) {
+            if (checkpoint != null && i > position && i % checkpoint_interval == 0) {
+                try {
+                    Checkpoint.write(checkpoint, this, engine, i, System.nanoTime() - startTime);
+                } catch (IOException e) {
+                    // the run goes on without this checkpoint
+                    e.printStackTrace();
+                }
+            }
+            Worker worker = order.get(i);
 
             // case 1: a worker requests
-            if (worker.isBanned()) {
+            int task_id = engine.onRequest(worker.getWorkerId());
+            if (task_id == TDSSAEngine.NO_TASK) {
                 continue;
-            } else {
-                workers.add(worker);
-            }
-            Set<Task> golden_tasks = new HashSet<Task>(id_to_golden.values());
-            Set<Task> normal_tasks = new HashSet<Task>(id_to_task.values());
-            Task assigned_task = pta.assign(worker, golden_tasks, normal_tasks);
-            if (assigned_task != null && worker.getAttackerID() != -1) {
-                Attacker attacker = id_to_attacker.get(worker.getAttackerID());
-                // update the observation of the attacker if a task is assigned to a Sybil worker
-                attacker.observe(assigned_task);
             }
+            Task assigned_task = getTask(task_id);
+            observe(worker, assigned_task);
+            engine.onLabel(worker.getWorkerId(), task_id, chooseLabel(worker, assigned_task));
+        }
 
-            // case 2: a worker labels a golden task
-            if (id_to_golden.values().contains(assigned_task)) {
-                gold_num++;
-                if (worker.getAttackerID() == -1) {
-                    worker.label(assigned_task, worker.getPairs().get(assigned_task));
-                } else {
-                    Attacker attacker = id_to_attacker.get(worker.getAttackerID());
-                    int label = attacker.getTaskLabel(assigned_task);
-                    worker.label(assigned_task, label);
-                }
+        engine.finish();
+        evaluate(engine, System.nanoTime() - startTime);
+    }
 
-                // update s_j, r_j and p_j
-                int s_count = 0;
-                int r_count = 0;
-                double r_correct = 0;
-                double ls = 0;
-                double hs = 0;
-
-                for (Task task : worker.getLabeledPairs().keySet()) {
-                    if (id_to_golden.values().contains(task)) {
-                        r_count++;
-                        task.calMajority();
-                        int[] majority = task.getMajority();
-                        int truth = task.getTrueLabel();
-                        if (id_to_task.values().contains(task)) {
-                            truth = task.getAggregated();
-                        }
-                        int answer = worker.getLabeledPairs().get(task);
-                        for (int i = 0; i < L; i++) {
-                            if (majority[i] == 1 && answer == i && i != truth) {
-                                s_count++;
-                            }
-                        }
-                        if (answer == truth) {
-                            r_correct++;
-                        }
-                    }
+    /* simulate the workers of the run arriving by an arrival process, where each worker makes as many requests as in the
+       requesting order, takes label_time seconds on average to label a task and think_time seconds before her next
+       request, and a batch takes batch_time seconds to publish its aggregated labels */
+    public void simulate(ArrivalProcess arrivals, double label_time, double think_time, double batch_time) {
+        TDSSAEngine engine = open();
 
-                }
-                worker.setS(2.0 / (1 + Math.pow(Math.E, -s_count)) - 1);
-                worker.setR((2.0 / (1 + Math.pow(Math.E, -r_count / 3)) - 1) * r_correct / r_count);
-                worker.setP(r_correct / r_count);
-
-
-                // ban the worker if her Sybil score passes the Sybil threshold
-                if (worker.getS() >= tau) {
-                    worker.ban();
-                    // remove the worker's labels on normal tasks
-                    workers.remove(worker);
-                    Set<Task> to_remove = new HashSet<Task>(worker.getLabeledPairs().keySet());
-                    to_remove.removeAll(id_to_golden.values());
-                    for (Task task : to_remove) {
-                        task.expose();
-                        worker.remove(task);
-                        task.remove(worker);
-                    }
-                }
+        long startTime = System.nanoTime();
+        simulator = new Simulator(this, engine, order, arrivals, label_time, think_time, batch_time, rand);
+        simulator.run();
+        engine.finish();
+        evaluate(engine, System.nanoTime() - startTime);
+    }
+
+    /* return the requesting order of workers of the run */
+    List<Worker> getOrder() {
+        return order;
+    }
+
+    /* return the labels of workers on tasks of the run */
+    AnswerMatrix getAnswers() {
+        return answers;
+    }
+
+    /* return the normal or golden task of an ID */
+    Task getTask(int task_id) {
+        Task task = id_to_task.get(task_id);
+        if (task == null) {
+            task = id_to_golden.get(task_id);
+        }
+        return task;
+    }
+
+    /* update the observation of the attacker if a task is assigned to a Sybil worker */
+    void observe(Worker worker, Task assigned_task) {
+        int attacker_id = worker.getAttackerID();
+        if (attacker_id != -1) {
+            Attacker attacker = id_to_attacker.get(attacker_id);
+            attacker.observe(assigned_task, rand);
+        }
+    }
+
+    /* return the label of a worker on her assigned task, as in the data or the attack */
+    int chooseLabel(Worker worker, Task assigned_task) {
+        int attacker_id = worker.getAttackerID();
+        int label = -1;
+
+        // case 2: a worker labels a golden task
+        if (assigned_task.isGolden()) {
+            if (attacker_id == -1) {
+                label = worker.getAnswer(assigned_task);
+            } else {
+                label = id_to_attacker.get(attacker_id).getTaskLabel(assigned_task);
             }
+        }
 
-            // case 3: a worker labels a normal task
-            else if (id_to_task.values().contains(assigned_task)) {
-                int attacker_id = worker.getAttackerID();
-                int label = -1;
-
-                //old
-                if (attacker_id != -1) {
-                    label = id_to_attacker.get(attacker_id).getTaskLabel(assigned_task);
-                    // occasionally deviate from the sharing
-                    Random rand = new Random();
-                    if (rand.nextDouble() <= epsilon) {
-                        int temp_label = rand.nextInt(L);
-                        while (temp_label == label) {
-                            temp_label = rand.nextInt(L);
-                        }
-                        label = temp_label;
+        // case 3: a worker labels a normal task
+        else {
+            //old
+            if (attacker_id != -1) {
+                label = id_to_attacker.get(attacker_id).getTaskLabel(assigned_task);
+                // occasionally deviate from the sharing
+                if (rand.nextDouble() <= epsilon) {
+                    int temp_label = rand.nextInt(L);
+                    while (temp_label == label) {
+                        temp_label = rand.nextInt(L);
                     }
-                } else {
-                    label = worker.getPairs().get(assigned_task);
+                    label = temp_label;
                 }
+            } else {
+                label = worker.getAnswer(assigned_task);
+            }
 
-                //new
+            //new
 
 //                if (attacker_id != -1 && assigned_task.getTask_reward() > 13) {
 //                    //The attack of a sybil attacker
@@ -370,91 +465,13 @@ public class TDSSA {
 //                } else {
 //                    label = worker.getPairs().get(assigned_task);
 //                }
-
-
-                worker.label(assigned_task, label);
-
-                // update the number of completed tasks that can be promoted
-                if (assigned_task.getAssigned().size() >= K) {
-                    assigned_task.calCi();
-                    if (assigned_task.getCi() >= delta) {
-                        promotion_num++;
-                    }
-                }
-            }
-
-            // if the batch condition is met, update aggregated labels and promote tasks
-            if (promotion_num == B) {
-                Set<Task> tasks = new HashSet<Task>(id_to_task.values());
-                tasks.removeAll(id_to_golden.values());
-                // run extended truth discovery
-                etd.process(tasks, workers);
-                for (Task task : tasks) {
-                    if (task.getAssigned().size() >= K) {
-                        task.calCi();
-                        if (task.getCi() >= delta) {
-                            id_to_golden.put(task.getTaskId(), task);
-                        }
-                    }
-                }
-                promotion_num = 0;
-
-            }
-
-            //System.out.println("222worker.getLabeledPairs().keySet().size():" + worker.getLabeledPairs().keySet().size());
-            //new deference function
-            for (Task task : worker.getLabeledPairs().keySet()) {
-
-                //System.out.println("----task.getTaskId():" + task.getTaskId() + "----task.getTask_reward()" + task.getTask_reward());
-                if (task.getTask_reward() <= 13) {
-                    worker.setCLT();
-                    if (task.getTrueLabel() == worker.getLabeledPairs().get(task)) {
-                        worker.setCLR();
-                    }
-                } else {
-                    worker.setCHT();
-                    if (task.getAggregated() == worker.getLabeledPairs().get(task)) {
-                        worker.setCHR();
-                    }
-                }
-            }
-            double ls = 0, hs = 0;
-            double ql, qh;
-            //System.out.println("-------------worker.getCLR():" + worker.getCLR() + "-------------worker.getCLT():" + worker.getCLT());
-            //version1
-            //if (worker.getCLT() > 0) ls = worker.getCLR() / worker.getCLT();
-            //if (worker.getCHT() > 0) hs = worker.getCHR() / worker.getCHT();
-
-            //version2
-            if (worker.getCLT() > 0) ls = worker.getCLR() / worker.getCLT() * (2 / (1 + Math.pow(Math.E, -worker.getCLT())) - 1);
-            if (worker.getCHT() > 0) hs = worker.getCHR() / worker.getCHT() * (2 / (1 + Math.pow(Math.E, -worker.getCHT())) - 1);
-            //if (worker.getCLT() > 0) ql = worker.getCLR() / worker.getCLT();
-//            else ql = 1 / L;
-//            if (worker.getCHT() > 0)  qh = worker.getCHR() / worker.getCHT();
-//            else qh = 1 / L;
-//            //ls = ql * (2.0 / (1.0 + Math.pow(Math.E, -worker.getCLT()/3)) - 1);
-//            hs = qh * (2.0 / (1.0 + Math.pow(Math.E, -worker.getCHT()/3)) - 1);
-
-            if (ls >= 0.7 && hs <= 1 / L + 0.1) {
-                //if (ls >= 0.8 && hs >= 0.8) {
-                worker.ban();
-                //System.out.println("succeed---------------------------------------------");
-                // remove the worker's labels on normal tasks
-                workers.remove(worker);
-                Set<Task> to_remove = new HashSet<Task>(worker.getLabeledPairs().keySet());
-                to_remove.removeAll(id_to_golden.values());
-                for (Task task : to_remove) {
-                    task.expose();
-                    worker.remove(task);
-                    task.remove(worker);
-                }
-            }
-
         }
+        return label;
+    }
 
-        Set<Task> tasks = new HashSet<Task>(id_to_task.values());
-        etd.process(tasks, workers);
-        long endTime = System.nanoTime();
+    /* evaluate the aggregated labels and the attack after the engine finishes, where elapsed is the running time in nanoseconds */
+    private void evaluate(TDSSAEngine engine, long elapsed) {
+        metrics = engine.snapshotMetrics();
 
         a_accuracy = 0.0;
 
@@ -467,18 +484,14 @@ public class TDSSA {
             }
 
             //new
-            for (Worker worker : task.getAssigned()) {
+            for (int j = 0; j < task.getAssignedNum(); j++) {
+                Worker worker = task.getAssignedWorker(j);
                 if (worker.getAttackerID() != -1) {
-                    if (worker.getLabeledPairs().get(task).intValue() == task.getAggregated()) {
+                    if (task.getAssignedLabel(j) == task.getAggregated()) {
                         attackGotReward += task.getTask_reward();
                     }
                 }
             }
-
-            task.reset();
-        }
-        for (Worker worker : id_to_worker.values()) {
-            worker.reset();
         }
         a_accuracy = a_accuracy / id_to_task.size();
         Set<Task> exposed = new HashSet<Task>();
@@ -500,8 +513,8 @@ public class TDSSA {
 
 
         e_number = exposed.size();
-        t_cost = gold_num * 1.0 / id_to_worker.size();
-        running_time = (endTime - startTime) / 1000000;
+        t_cost = metrics.getGoldenNum() * 1.0 / id_to_worker.size();
+        running_time = elapsed / 1000000;
     }
 
     /* return the aggregation accuracy */
@@ -519,16 +532,158 @@ public class TDSSA {
         return t_cost;
     }
 
+    /* set the kind of truth discovery, e.g., "etd" or "majority" */
+    public void setTruthDiscovery(String td_kind) {
+        this.td_kind = td_kind;
+    }
+
+    /* set whether batches run the incremental mode of extended truth discovery */
+    public void setIncrementalETD(boolean incremental_etd) {
+        this.incremental_etd = incremental_etd;
+    }
+
+    /* set the tier boundary between low and high rewards in the deference check */
+    public void setRewardTier(int reward_tier) {
+        for (int t = 0; t < answers.getTaskNum(); t++) {
+            Task task = answers.getTask(t);
+            task.setHighReward(task.getTask_reward() > reward_tier);
+        }
+    }
+
+    /* set whether batches are aggregated on a background thread while the assignment goes on */
+    public void setBackgroundETD(boolean background_etd) {
+        this.background_etd = background_etd;
+    }
+
+    /* set the pool for parallel extended truth discovery (null means sequential) */
+    public void setETDPool(ForkJoinPool etd_pool) {
+        this.etd_pool = etd_pool;
+    }
+
+    /* set whether the phases of the engine are timed */
+    public void setInstrumented(boolean instrumented) {
+        this.instrumented = instrumented;
+    }
+
+    /* continue the worker features carried across runs from the previous run on the same dataset */
+    public void inherit(TDSSA previous) {
+        for (int w = 0; w < answers.getWorkerNum(); w++) {
+            answers.getWorker(w).carryOver(previous.answers.getWorker(w));
+        }
+    }
+
+    /* write a checkpoint of the run into a file every interval requests of the requesting order */
+    public void setCheckpoint(String checkpoint, int interval) {
+        this.checkpoint = checkpoint;
+        checkpoint_interval = interval;
+    }
+
+    /* resume the run from a checkpoint written by a run on the same data, where the continuation draws its random numbers
+       from the seed of the run instead of the checkpoint if reseed is set, e.g., to fork different continuations */
+    public void setResume(String resume, boolean reseed) {
+        this.resume = resume;
+        this.reseed = reseed;
+    }
+
+    /* write the fingerprint of the data, the attack and the requesting order, the state of the random number generator and
+       the observations of the attackers into a checkpoint */
+    void save(DataOutputStream out) throws IOException {
+        out.writeInt(answers.getTaskNum());
+        out.writeInt(answers.getWorkerNum());
+        out.writeInt(order.size());
+        out.writeLong(fingerprint());
+        out.writeLong(rand.getState());
+        out.writeInt(id_to_attacker.size());
+        for (Attacker attacker : id_to_attacker.values()) {
+            out.writeInt(attacker.getAttackerId());
+            attacker.save(out);
+        }
+    }
+
+    /* restore the state of the random number generator and the observations of the attackers from a checkpoint, and return
+       whether the checkpoint was written by a run on the same data */
+    boolean restore(DataInputStream in) throws IOException {
+        if (in.readInt() != answers.getTaskNum() || in.readInt() != answers.getWorkerNum() || in.readInt() != order.size()
+                || in.readLong() != fingerprint()) {
+            return false;
+        }
+        long state = in.readLong();
+        if (!reseed) {
+            rand.setState(state);
+        }
+        int attacker_num = in.readInt();
+        if (attacker_num != id_to_attacker.size()) {
+            return false;
+        }
+        for (int i = 0; i < attacker_num; i++) {
+            Attacker attacker = id_to_attacker.get(in.readInt());
+            if (attacker == null) {
+                return false;
+            }
+            attacker.restore(in);
+        }
+        return true;
+    }
+
+    /* return a fingerprint of the tasks, the workers, the attack and the requesting order of the run */
+    private long fingerprint() {
+        long fingerprint = 31L * L + K;
+        for (int t = 0; t < answers.getTaskNum(); t++) {
+            Task task = answers.getTask(t);
+            fingerprint = 31 * fingerprint + task.getTaskId();
+            fingerprint = 31 * fingerprint + task.getTrueLabel();
+        }
+        for (int w = 0; w < answers.getWorkerNum(); w++) {
+            Worker worker = answers.getWorker(w);
+            fingerprint = 31 * fingerprint + worker.getWorkerId();
+            fingerprint = 31 * fingerprint + worker.getAttackerID();
+        }
+        for (Worker worker : order) {
+            fingerprint = 31 * fingerprint + worker.getIndex();
+        }
+        return 31 * fingerprint + Double.doubleToLongBits(epsilon);
+    }
+
+    /* set the seed of the random number generator of the run */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        seeded = true;
+    }
+
     /* return the running time */
     public long getRunningTime() {
         return running_time;
     }
 
+    /* return the numbers of activities and latencies of the engine of the run */
+    public TDSSAEngine.Metrics getMetrics() {
+        return metrics;
+    }
+
+    /* return the discrete-event simulation of the run (null if the requesting order is replayed) */
+    public Simulator getSimulator() {
+        return simulator;
+    }
+
     //new
     public int getAttackGotReward() {
         return attackGotReward;
     }
 
+    /* return the standard error of the mean of accumulated values */
+    private static double standardError(SummaryStatistics stats) {
+        return stats.getStandardDeviation() / Math.sqrt(stats.getN());
+    }
+
+    /* return the half width of the confidence interval of the mean of accumulated values at a level by Student's t-distribution */
+    private static double halfWidth(SummaryStatistics stats, double confidence) {
+        if (stats.getN() < 2) {
+            return Double.NaN;
+        }
+        double t = new TDistribution(stats.getN() - 1).inverseCumulativeProbability(1 - (1 - confidence) / 2);
+        return t * standardError(stats);
+    }
+
     /* main function */
     public static void main(String[] args) {
         if (args.length != 9 && args.length != 14) {
@@ -546,9 +701,22 @@ public class TDSSA {
         double epsilon = Double.parseDouble(args[7]);
         int lambda = Integer.parseInt(args[8]);
 
+        boolean isolated = Boolean.getBoolean("tdssa.isolated"); // whether runs are independent
+        // in the adaptive mode, runs stop once the standard errors of the targets drop below their thresholds,
+        // and run_num is the maximum number of runs
+        String se_accuracy = System.getProperty("tdssa.runs.se.accuracy"); // threshold of the standard error of A-Accuracy (null means no target)
+        String se_reward = System.getProperty("tdssa.runs.se.reward"); // threshold of the standard error of attackGotReward (null means no target)
+        boolean adaptive = se_accuracy != null || se_reward != null; // whether the number of runs is adaptive
+        // the stopping rule and the confidence intervals assume independent runs, while chained runs continue the
+        // workers of the previous run and trend with them, so the options are checked before the preprocessing
+        if (adaptive && !isolated) {
+            System.out.println("The adaptive number of runs needs isolated runs (tdssa.isolated=true)!");
+            System.exit(1);
+        }
+
+        Preprocess pre;
         if (args.length == 9) {
-            Preprocess pre = new Preprocess(dataset, run_num, mu, epsilon, lambda);
-            pre.formalize();
+            pre = new Preprocess(dataset, run_num, mu, epsilon, lambda);
         } else {
             int N = Integer.parseInt(args[9]);
             int M = Integer.parseInt(args[10]);
@@ -556,8 +724,28 @@ public class TDSSA {
             int K = Integer.parseInt(args[12]);
             double theta = Double.parseDouble(args[13]);
 
-            Preprocess pre = new Preprocess(dataset, run_num, mu, epsilon, lambda, N, M, L, K, theta);
+            pre = new Preprocess(dataset, run_num, mu, epsilon, lambda, N, M, L, K, theta);
+            pre.setPartitions(Math.max(1, Integer.getInteger("tdssa.syn.partitions", 1)));
+        }
+        if (Long.getLong("tdssa.seed") != null) {
+            pre.setSeed(Long.getLong("tdssa.seed"));
+        }
+        // seeded runs are generated from the seed of runs (or a random seed) instead of files
+        if (Boolean.getBoolean("tdssa.runs.seeded")) {
+            pre.setRunSeed(Long.getLong("tdssa.seed", new Random().nextLong()));
+        }
+        // a cached preprocessing is reused from (or written into) the folder of its hash in the dataset folder
+        String folder; // folder of the formalized data (null if the preprocessing failed)
+        if (Boolean.getBoolean("tdssa.cache")) {
+            folder = pre.formalizeCached();
+        } else {
             pre.formalize();
+            folder = pre.isComplete() ? dataset : null;
+        }
+        // a failed preprocessing is not formalized again, which would overwrite the files of the dataset folder
+        if (folder == null) {
+            System.out.println("Preprocessing of " + dataset + " failed!");
+            System.exit(1);
         }
 
         try {
@@ -567,80 +755,134 @@ public class TDSSA {
             BufferedWriter w1 = new BufferedWriter(new FileWriter(dataset + "//result.txt", true));
             // write worker number M, task number N, label size L and worker number per task K
             w1.write(dataset + " ");
-            TDSSA tdssa = new TDSSA(B, alpha, tau, delta);
-            tdssa.readNormal(dataset);
-
-            double[] accuracy = new double[run_num]; // record aggregation accuracy in each run
-            double[] exposed = new double[run_num]; // record number of exposed golden tasks in each run
-            double[] cost = new double[run_num]; // record number of golden tasks for testing each worker in each run
-            long[] time = new long[run_num]; // record running time in each run
-
-            //new
-            int[] attackGotReward = new int[run_num]; //attack got reward
+            Dataset data = new Dataset(dataset, folder);
+
+            // by default each run continues the worker features carried from the previous run, so the runs on the thread
+            // pool only prepare in parallel and each run starts after the previous one completes; isolated runs start from
+            // fresh workers and are executed in parallel. Either way the runs are reported in order, and the number of
+            // threads does not change the results
+            int threads = Math.max(1, Integer.getInteger("tdssa.threads", 1)); // number of runs executed at the same time
+            int etd_parallelism = Integer.getInteger("tdssa.etd.parallelism", 1); // number of threads of extended truth discovery
+            String td_kind = System.getProperty("tdssa.td", "etd"); // kind of truth discovery
+            TruthDiscovery.of(td_kind, data.getL()); // an unknown kind is rejected before the runs
+            Long seed = Long.getLong("tdssa.seed"); // seed of the random number generators of runs (null means unseeded)
+            String sim_rate = System.getProperty("tdssa.sim.rate"); // arrival rate of simulated workers (null means the order is replayed)
+            ArrivalProcess arrivals = sim_rate == null ? null : ArrivalProcess.of(System.getProperty("tdssa.sim.arrival", "poisson"), Double.parseDouble(sim_rate));
+            double sim_label = Double.parseDouble(System.getProperty("tdssa.sim.label", "30")); // average time to label a task
+            double sim_think = Double.parseDouble(System.getProperty("tdssa.sim.think", "5")); // average time between a label and the next request
+            double sim_batch = Double.parseDouble(System.getProperty("tdssa.sim.batch", "0")); // time for a batch to publish
+            String metrics_kind = System.getProperty("tdssa.metrics"); // format of exported metrics (null means no export)
+            MetricsExporter exporter = metrics_kind == null ? null : MetricsExporter.of(metrics_kind, dataset,
+                    MetricsExporter.point(B, alpha, tau, delta, mu, epsilon, lambda));
+            int checkpoint_interval = Integer.getInteger("tdssa.checkpoint", 0); // number of requests between checkpoints (0 means none)
+            boolean resume = Boolean.getBoolean("tdssa.resume"); // whether runs resume from their checkpoints
+            boolean reseed = Boolean.getBoolean("tdssa.resume.reseed"); // whether resumed runs draw random numbers from their seeds
+            int min_runs = Integer.getInteger("tdssa.runs.min", 5); // minimum number of runs in the adaptive mode
+            double confidence = Double.parseDouble(System.getProperty("tdssa.runs.confidence", "0.95")); // level of the confidence intervals
+            AtomicBoolean stopped = new AtomicBoolean(); // whether the remaining runs are skipped
+            ForkJoinPool etd_pool = etd_parallelism > 1 ? new ForkJoinPool(etd_parallelism) : null;
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            ArrayList<Future<TDSSA>> runs = new ArrayList<Future<TDSSA>>();
+            for (int r = 0; r < run_num; r++) {
+                int run = r;
+                Future<TDSSA> previous = isolated || r == 0 ? null : runs.get(r - 1); // previous run whose workers are continued
+                runs.add(executor.submit(() -> {
+                    if (stopped.get()) {
+                        return null;
+                    }
+                    TDSSA tdssa = new TDSSA(B, alpha, tau, delta, data);
+                    tdssa.setTruthDiscovery(td_kind);
+                    tdssa.setIncrementalETD(Boolean.getBoolean("tdssa.etd.incremental"));
+                    tdssa.setETDPool(etd_pool);
+                    tdssa.setBackgroundETD(Boolean.getBoolean("tdssa.etd.background"));
+                    tdssa.setRewardTier(Integer.getInteger("tdssa.stdel.tier", REWARD_TIER));
+                    tdssa.setInstrumented(exporter != null);
+                    if (seed != null) {
+                        tdssa.setSeed(seed ^ (run * 0x9E3779B97F4A7C15L));
+                    }
+                    tdssa.readAttack(folder, run);
+                    tdssa.readOrder(folder, run);
+                    String checkpoint = dataset + "//checkpoint_run" + (run + 1) + ".bin"; // checkpoint of the run
+                    if (resume && new File(checkpoint).exists()) {
+                        tdssa.setResume(checkpoint, reseed);
+                    }
+                    if (checkpoint_interval > 0) {
+                        tdssa.setCheckpoint(checkpoint, checkpoint_interval);
+                    }
+                    // the attack and the order do not depend on the carried features, so they are read before waiting
+                    if (previous != null) {
+                        TDSSA last = previous.get();
+                        if (last == null) {
+                            return null;
+                        }
+                        tdssa.inherit(last);
+                    }
+                    if (stopped.get()) {
+                        return null;
+                    }
+                    if (arrivals == null) {
+                        tdssa.run();
+                    } else {
+                        tdssa.simulate(arrivals, sim_label, sim_think, sim_batch);
+                    }
+                    return tdssa;
+                }));
+            }
+            executor.shutdown();
 
-            double ave_a_accuracy = 0.0; // average aggregation accuracy
-            double ave_e_number = 0.0; // average number of exposed golden tasks
-            double ave_t_cost = 0.0; // average number of golden tasks for testing each worker
-            long ave_running_time = 0; // average running time
+            // the metrics of the runs are accumulated as they are reported, without keeping the values of every run
+            SummaryStatistics accuracy = new SummaryStatistics(); // aggregation accuracy of runs
+            SummaryStatistics exposed = new SummaryStatistics(); // number of exposed golden tasks of runs
+            SummaryStatistics cost = new SummaryStatistics(); // number of golden tasks for testing each worker of runs
+            SummaryStatistics time = new SummaryStatistics(); // running time of runs
 
             //new
-            double ave_attackGotReward = 0.0; //attack got reward
+            SummaryStatistics attackGotReward = new SummaryStatistics(); //attack got reward (in hundreds) of runs
 
+            int done = 0; // number of reported runs
             for (int r = 0; r < run_num; r++) {
-                tdssa.readGolden(dataset);
-                tdssa.readAttack(dataset, r);
-                tdssa.readOrder(dataset, r);
-                tdssa.run();
-                accuracy[r] = tdssa.getAAccuracy();
-                exposed[r] = tdssa.getENumber();
-                cost[r] = tdssa.getTCost();
-                time[r] = tdssa.getRunningTime();
-
-                //new
-                attackGotReward[r] = tdssa.getAttackGotReward();
-
-                ave_a_accuracy += tdssa.getAAccuracy();
-                ave_e_number += tdssa.getENumber();
-                ave_t_cost += tdssa.getTCost();
-                ave_running_time += tdssa.getRunningTime();
+                TDSSA tdssa = runs.get(r).get();
+                runs.set(r, null);
+                accuracy.addValue(tdssa.getAAccuracy());
+                exposed.addValue(tdssa.getENumber());
+                cost.addValue(tdssa.getTCost());
+                time.addValue(tdssa.getRunningTime());
 
                 //new
-                ave_attackGotReward += tdssa.getAttackGotReward() / 100;
+                attackGotReward.addValue(tdssa.getAttackGotReward() / 100);
 
-                System.out.println("Run " + (r + 1) + " --- A-Accuracy:" + accuracy[r] + "  attackGotReward:" + attackGotReward[r] + "  E-Number:" + exposed[r] + "  T-Cost:" + cost[r] + "  Time:" + time[r] + "ms");
+                System.out.println("Run " + (r + 1) + " --- A-Accuracy:" + tdssa.getAAccuracy() + "  attackGotReward:" + tdssa.getAttackGotReward() + "  E-Number:" + tdssa.getENumber() + "  T-Cost:" + tdssa.getTCost() + "  Time:" + tdssa.getRunningTime() + "ms");
+                System.out.println("        " + tdssa.getMetrics());
+                if (tdssa.getSimulator() != null) {
+                    System.out.println("        " + tdssa.getSimulator());
+                }
+                if (exporter != null) {
+                    exporter.export(t, r + 1, tdssa.getRunningTime(), tdssa.getMetrics());
+                }
+                done = r + 1;
+                if (adaptive && done >= min_runs
+                        && (se_accuracy == null || standardError(accuracy) <= Double.parseDouble(se_accuracy))
+                        && (se_reward == null || standardError(attackGotReward) <= Double.parseDouble(se_reward))) {
+                    // the runs not started yet are skipped, and the runs in progress are discarded
+                    stopped.set(true);
+                    break;
+                }
             }
-            ave_a_accuracy /= run_num;
-            ave_e_number /= run_num;
-            ave_t_cost /= run_num;
-            ave_running_time /= run_num;
+            double ave_a_accuracy = accuracy.getMean(); // average aggregation accuracy
+            double ave_e_number = exposed.getMean(); // average number of exposed golden tasks
+            double ave_t_cost = cost.getMean(); // average number of golden tasks for testing each worker
+            long ave_running_time = (long) time.getMean(); // average running time
 
             //new
-            ave_attackGotReward /= run_num;
+            double ave_attackGotReward = attackGotReward.getMean(); //attack got reward
 
-            double std_a_accuracy = 0.0; // standard error of A-Accuracy
-            double std_e_number = 0.0; // standard error of E-Number
-            double std_t_cost = 0.0; // standard error of T-Cost
-            long std_running_time = 0; // standard error of Time
-
-            //new
-            double std_attackGotReward = 0.0; //standard error of attackGotReward
-
-            for (int r = 0; r < run_num; r++) {
-                std_a_accuracy += Math.pow(ave_a_accuracy - accuracy[r], 2);
-                std_e_number += Math.pow(ave_e_number - exposed[r], 2);
-                std_t_cost += Math.pow(ave_t_cost - cost[r], 2);
-                std_running_time += Math.pow(ave_running_time - time[r], 2);
-
-                //new
-                std_attackGotReward += Math.pow(ave_attackGotReward - attackGotReward[r], 2);
-            }
-            std_a_accuracy = Math.sqrt(std_a_accuracy / (run_num - 1)) / Math.sqrt(run_num);
-            std_e_number = Math.sqrt(std_e_number / (run_num - 1)) / Math.sqrt(run_num);
-            std_t_cost = Math.sqrt(std_t_cost / (run_num - 1)) / Math.sqrt(run_num);
-            std_running_time = (long) (Math.sqrt(std_running_time / (run_num - 1)) / Math.sqrt(run_num));
+            double std_a_accuracy = standardError(accuracy); // standard error of A-Accuracy
+            double std_e_number = standardError(exposed); // standard error of E-Number
+            double std_t_cost = standardError(cost); // standard error of T-Cost
+            long std_running_time = (long) standardError(time); // standard error of Time
 
             //new
-            std_attackGotReward = Math.sqrt(std_attackGotReward / (run_num - 1)) / Math.sqrt(run_num);
+            double std_attackGotReward = standardError(attackGotReward); //standard error of attackGotReward
 
             System.out.println("\nAverage: ");
             System.out.println("A-Accuracy: " + ave_a_accuracy + "  Standard Eror: " + std_a_accuracy);
@@ -650,6 +892,13 @@ public class TDSSA {
 
             //new
             System.out.println("attackGotReward:" + ave_attackGotReward + "  Standard Eror: " + std_attackGotReward);
+            System.out.println("Runs: " + done + " of " + run_num + (adaptive ? (stopped.get() ? " (converged)" : " (maximum reached)") : ""));
+            // the intervals are clamped to the ranges of the metrics, and chained runs are reported as dependent
+            String dependence = isolated ? "" : " (chained runs are not independent)";
+            System.out.println(String.format("A-Accuracy %.0f%% CI: [%.6f, %.6f]", confidence * 100,
+                    Math.max(0, ave_a_accuracy - halfWidth(accuracy, confidence)), Math.min(1, ave_a_accuracy + halfWidth(accuracy, confidence))) + dependence);
+            System.out.println(String.format("attackGotReward %.0f%% CI: [%.2f, %.2f]", confidence * 100,
+                    Math.max(0, ave_attackGotReward - halfWidth(attackGotReward, confidence)), ave_attackGotReward + halfWidth(attackGotReward, confidence)) + dependence);
 
 
 //            w1.write("\nAverage:\n");
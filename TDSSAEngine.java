@@ -0,0 +1,898 @@
+/**
+ * TDSSAEngine.java serves the activities of workers on the tasks of a run in real time: a
+ * worker requests a task, submits her label on it, and is banned as soon as her Sybil score
+ * or her deference statistics pass their thresholds. The engine coordinates the
+ * probabilistic task assignment and the truth discovery (extended truth discovery by
+ * default, see TruthDiscovery) on the tasks and workers of the run. Aggregated labels are
+ * updated in batches. By default a batch runs within the call that meets its condition, so
+ * that a replay of the same activities is reproducible.
+ * With background batches, the labels, scores and aggregated labels are copied when the
+ * condition is met and aggregated on a background thread while assignment goes on, and
+ * the result is applied at the next call after it is ready. Requests of different workers
+ * are assigned concurrently under the read lock of the engine, and the requests of each
+ * worker one at a time, while labels, batches and bans hold its write lock. About one call
+ * in TIMED of each kind and every batch are timed, since reading the clock costs as much as
+ * a short call, and a snapshot of metrics reports the numbers of activities and the latency
+ * percentiles of each kind of call. An instrumented engine also times every phase of the
+ * calls, i.e., assignment, golden and normal labels, bans, promotion, and the truth discovery
+ * of batches and of the final pass, while an engine that is not instrumented pays a single
+ * check per phase. The run state of an engine between calls can be saved into a checkpoint
+ * and restored into a new engine on the same run (see Checkpoint).
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+public class TDSSAEngine {
+    /* kinds of timed calls */
+    public static final int REQUEST = 0; // onRequest
+    public static final int LABEL = 1; // onLabel
+    public static final int AGGREGATE = 2; // currentAggregate
+    public static final int BATCH = 3; // truth discovery of a batch
+    private static final String[] CALLS = {"request", "label", "aggregate", "batch"}; // names of the kinds of timed calls
+
+    /* phases timed in an instrumented engine (a phase may contain another, e.g. a ban within a golden update) */
+    public static final int ASSIGN = 0; // task assignment of a request
+    public static final int GOLDEN_UPDATE = 1; // label on a golden task with the update of s_j, r_j and p_j
+    public static final int NORMAL_LABEL = 2; // label on a normal task
+    public static final int BAN = 3; // ban of a worker with the removal of her labels
+    public static final int PROMOTION = 4; // settlement of aggregated labels and promotion of tasks after a batch
+    public static final int ETD = 5; // extended truth discovery of a batch
+    public static final int FINAL_ETD = 6; // final pass of extended truth discovery
+    private static final String[] PHASES = {"assign", "golden_update", "normal_label", "ban", "promotion", "etd", "final_etd"}; // names of the phases
+
+    /* reasons of bans */
+    public static final int SYBIL = 0; // Sybil score passes the Sybil threshold
+    public static final int DEFERENCE = 1; // deference statistics pass their thresholds
+    private static final String[] REASONS = {"sybil", "deference"}; // names of the reasons of bans
+    public static final int NO_TASK = Integer.MIN_VALUE; // returned when no task is assigned (task IDs may be negative)
+    private static final int TIMED = 16; // about one call in TIMED of each kind is timed
+    private static final long UNTIMED = Long.MIN_VALUE; // start time of a call that is not timed
+
+    /* TDSSA parameters */
+    private int B; // condition for terminating a batch
+    private double tau; // Sybil threshold for banning workers
+    private double delta; // reliability threshold for marking reliable workers
+    private String td_kind; // kind of truth discovery of the batches and the final pass (see TruthDiscovery.of)
+    private boolean incremental_etd; // whether batches run the incremental mode of extended truth discovery
+    private ForkJoinPool etd_pool; // pool for parallel extended truth discovery (null means sequential)
+
+    /* dataset parameters */
+    private Dataset data; // shared dataset of the run
+    private int L; // label size
+    private int K; // number of workers per task
+
+    /* run state */
+    private AnswerMatrix answers; // original and current labels of workers on tasks
+    private Map<Integer, Task> id_to_task; // ID to normal task mapping
+    private Map<Integer, Task> id_to_golden; // ID to golden task mapping (including promoted tasks)
+    private Map<Integer, Worker> id_to_worker; // ID to worker mapping
+    private Set<Worker> workers; // current workers in U
+    private TruthDiscovery etd; // truth discovery (extended truth discovery unless another kind is set)
+    private AssignmentIndex index; // candidate tasks of workers
+    private ProbabilisticTA pta; // probabilistic task assignment
+    private PromotionQueue queue; // normal tasks to evaluate for promotion
+    private Task[] waiting; // task assigned at the latest request of each worker until she labels it (null if none)
+    private boolean[] joined; // whether each worker has requested, which adds her to U
+    private ArrayList<Task> batch; // reusable list of tasks for truth discovery in a batch
+    private int promotion_num; // number of completed tasks that can be promoted
+
+    /* background batches */
+    private ExecutorService background; // thread aggregating the batches (null means batches run within calls)
+    private volatile Future<Snapshot> pending; // batch being aggregated in the background (null if there is none)
+    private boolean batch_due; // whether the batch condition was met while a batch was being aggregated
+
+    /* concurrency */
+    private StampedLock lock; // read lock for assignment, write lock for everything else (not reentrant)
+
+    /* metrics */
+    private LongAdder request_num; // number of requests
+    private long label_num; // number of labels
+    private long golden_num; // number of labels on golden tasks
+    private long ban_num; // number of banned workers
+    private long[] reason_nums; // number of banned workers for each reason
+    private long exposure_num; // number of labels revoked from banned workers, each exposing its task
+    private long batch_num; // number of applied batches
+    private long etd_iteration_num; // number of iterations (or incremental rounds) of extended truth discovery in batches
+    private int final_iteration_num; // number of iterations of the final pass of extended truth discovery
+    private long promoted_num; // number of promoted tasks
+    private Latency[] latencies; // latencies of each kind of timed call
+    private boolean instrumented; // whether the phases are timed
+    private Latency[] phases; // latencies of each phase
+
+    /* initialization on the tasks and workers of a run */
+    public TDSSAEngine(Dataset data, AnswerMatrix answers, Map<Integer, Task> id_to_task, Map<Integer, Task> id_to_golden,
+                       Map<Integer, Worker> id_to_worker, int B, double alpha, double tau, double delta, Random rand) {
+        this.B = B;
+        this.tau = tau;
+        this.delta = delta;
+        this.data = data;
+        L = data.getL();
+        K = data.getK();
+        this.answers = answers;
+        this.id_to_task = id_to_task;
+        this.id_to_golden = id_to_golden;
+        this.id_to_worker = id_to_worker;
+        workers = new HashSet<Worker>();
+        td_kind = "etd";
+        etd = new ExtendedTD(L);
+        index = new AssignmentIndex(id_to_task.values(), id_to_golden.values(), id_to_worker.values(), delta, K, rand);
+        pta = new ProbabilisticTA(tau, delta, alpha, K, index, rand);
+        queue = new PromotionQueue(id_to_task.values(), answers.getTaskNum(), K);
+        waiting = new Task[answers.getWorkerNum()];
+        joined = new boolean[answers.getWorkerNum()];
+        batch = new ArrayList<Task>();
+        promotion_num = 0;
+        lock = new StampedLock();
+        request_num = new LongAdder();
+        latencies = new Latency[CALLS.length];
+        for (int i = 0; i < CALLS.length; i++) {
+            latencies[i] = new Latency();
+        }
+        reason_nums = new long[REASONS.length];
+        phases = new Latency[PHASES.length];
+        for (int i = 0; i < PHASES.length; i++) {
+            phases[i] = new Latency();
+        }
+    }
+
+    /* set whether the phases of calls are timed (before the first call) */
+    public void setInstrumented(boolean instrumented) {
+        this.instrumented = instrumented;
+    }
+
+    /* set the kind of truth discovery, e.g., "etd" or "majority" (before the first call) */
+    public void setTruthDiscovery(String td_kind) {
+        TruthDiscovery.of(td_kind, L);
+        this.td_kind = td_kind;
+        resetETD();
+    }
+
+    /* set whether batches run the incremental mode of extended truth discovery (before the first call) */
+    public void setIncrementalETD(boolean incremental_etd) {
+        this.incremental_etd = incremental_etd;
+        resetETD();
+    }
+
+    /* set the pool for parallel extended truth discovery (null means sequential) */
+    public void setETDPool(ForkJoinPool etd_pool) {
+        this.etd_pool = etd_pool;
+        resetETD();
+    }
+
+    /* set whether batches are aggregated on a background thread (before the first call) */
+    public void setBackgroundBatches(boolean enabled) {
+        if (enabled && background == null) {
+            background = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "tdssa-batch");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else if (!enabled && background != null) {
+            background.shutdown();
+            background = null;
+        }
+        resetETD();
+    }
+
+    /* create the truth discovery of the current settings, where only extended truth discovery has the incremental mode
+       and background batches always run full passes */
+    private void resetETD() {
+        if (incremental_etd && background == null && td_kind.equals("etd")) {
+            etd = new ExtendedTD(L, answers);
+        } else {
+            etd = TruthDiscovery.of(td_kind, L);
+        }
+        if (etd_pool != null) {
+            etd.setPool(etd_pool);
+        }
+    }
+
+    /* respond to the request of a worker and return the ID of the assigned task (NO_TASK if none is assigned) */
+    public int onRequest(int worker_id) {
+        long start = start();
+        applyReady();
+        Worker worker = getWorker(worker_id);
+        int task_id = NO_TASK;
+        boolean ended = false; // whether the request ends without a task
+        long stamp = lock.readLock();
+        try {
+            synchronized (worker) {
+                if (!worker.isBanned()) {
+                    join(worker);
+                    long phase = startPhase();
+                    Task task = pta.assign(worker);
+                    endPhase(ASSIGN, phase);
+                    if (task != null) {
+                        task_id = task.getTaskId();
+                        waiting[worker.getIndex()] = task;
+                    } else {
+                        ended = true;
+                    }
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        if (ended) {
+            // the request ends without a label
+            stamp = lock.writeLock();
+            try {
+                if (!worker.isBanned()) {
+                    endRequest(worker);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        request_num.increment();
+        end(REQUEST, start);
+        return task_id;
+    }
+
+    /* accept the label of a worker on her assigned task and return whether the worker is banned */
+    public boolean onLabel(int worker_id, int task_id, int label) {
+        long start = start();
+        Worker worker = getWorker(worker_id);
+        boolean banned;
+        long stamp = lock.writeLock();
+        try {
+            applyBatch(false);
+            label(worker, task_id, label);
+            banned = worker.isBanned();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        end(LABEL, start);
+        return banned;
+    }
+
+    /* check and record the label of a worker */
+    private void label(Worker worker, int task_id, int label) {
+        int worker_id = worker.getWorkerId();
+        // the label is usually on the task assigned at the latest request, which needs neither a lookup nor a check
+        Task task = waiting[worker.getIndex()];
+        if (task == null || task.getTaskId() != task_id) {
+            task = getTask(task_id);
+            if (!worker.isBanned() && (!worker.isAssigned(task) || worker.getLabel(task) != -1)) {
+                throw new IllegalStateException("Task " + task_id + " is not waiting for a label of worker " + worker_id);
+            }
+        } else {
+            waiting[worker.getIndex()] = null;
+        }
+        // the labels of a worker arriving after her ban are dropped
+        if (!worker.isBanned()) {
+            if (label < 0 || label >= L) {
+                throw new IllegalArgumentException("Invalid label " + label + " of worker " + worker_id + " on task " + task_id);
+            }
+            label_num++;
+            long phase = startPhase();
+            if (task.isGolden()) {
+                labelGolden(worker, task, label);
+                endPhase(GOLDEN_UPDATE, phase);
+            } else {
+                labelNormal(worker, task, label);
+                endPhase(NORMAL_LABEL, phase);
+            }
+            endRequest(worker);
+        }
+    }
+
+    /* return the current aggregated label of a task (the true label of an original golden task, -1 if not aggregated yet) */
+    public int currentAggregate(int task_id) {
+        long start = start();
+        applyReady();
+        int label;
+        long stamp = lock.readLock();
+        try {
+            Task task = getTask(task_id);
+            label = task.getRole() == Task.GOLDEN ? task.getTrueLabel() : task.getAggregated();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        end(AGGREGATE, start);
+        return label;
+    }
+
+    /* return a snapshot of the numbers of activities and the latencies of calls */
+    public Metrics snapshotMetrics() {
+        long stamp = lock.readLock();
+        try {
+            return new Metrics(this);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /* return the number of applied batches */
+    public long getBatchNum() {
+        long stamp = lock.readLock();
+        try {
+            return batch_num;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /* wait for the background batches and aggregate all normal tasks with a final pass of extended truth discovery */
+    public void finish() {
+        long stamp = lock.writeLock();
+        try {
+            while (pending != null) {
+                applyBatch(true);
+            }
+            setBackgroundBatches(false);
+            long phase = startPhase();
+            etd.process(id_to_task.values(), workers);
+            final_iteration_num = etd.getIterationNum();
+            endPhase(FINAL_ETD, phase);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /* write the run state into a checkpoint between calls, after the background batch in progress is applied: the
+       counters, the number of completed tasks that can be promoted, whether each worker has joined, the tasks waiting
+       for labels, the current labels, the state of each task and each worker, the assignment index, the frontier of
+       promotion, and the kind of truth discovery with its kept state as a block of bytes prefixed by its length */
+    public void save(DataOutputStream out) throws IOException {
+        long stamp = lock.writeLock();
+        try {
+            while (pending != null) {
+                applyBatch(true);
+            }
+            out.writeLong(request_num.sum());
+            out.writeLong(label_num);
+            out.writeLong(golden_num);
+            out.writeLong(ban_num);
+            for (long reason_num : reason_nums) {
+                out.writeLong(reason_num);
+            }
+            out.writeLong(exposure_num);
+            out.writeLong(batch_num);
+            out.writeLong(etd_iteration_num);
+            out.writeLong(promoted_num);
+            out.writeInt(promotion_num);
+            for (int w = 0; w < answers.getWorkerNum(); w++) {
+                out.writeBoolean(joined[w]);
+                out.writeInt(waiting[w] == null ? -1 : waiting[w].getIndex());
+            }
+            answers.save(out);
+            for (int t = 0; t < answers.getTaskNum(); t++) {
+                answers.getTask(t).save(out);
+            }
+            for (int w = 0; w < answers.getWorkerNum(); w++) {
+                answers.getWorker(w).save(out);
+            }
+            index.save(out);
+            queue.save(out);
+            out.writeUTF(td_kind);
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            DataOutputStream block_out = new DataOutputStream(block);
+            etd.save(block_out);
+            block_out.flush();
+            out.writeInt(block.size());
+            block.writeTo(out);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /* restore the run state from a checkpoint before the first call, where the engine may have other parameters than the
+       engine that wrote it, e.g., to fork continuations of a common prefix with other thresholds, where the kept state of
+       another kind of truth discovery is skipped */
+    public void restore(DataInputStream in) throws IOException {
+        long stamp = lock.writeLock();
+        try {
+            request_num.add(in.readLong());
+            label_num = in.readLong();
+            golden_num = in.readLong();
+            ban_num = in.readLong();
+            for (int i = 0; i < reason_nums.length; i++) {
+                reason_nums[i] = in.readLong();
+            }
+            exposure_num = in.readLong();
+            batch_num = in.readLong();
+            etd_iteration_num = in.readLong();
+            promoted_num = in.readLong();
+            promotion_num = in.readInt();
+            for (int w = 0; w < answers.getWorkerNum(); w++) {
+                joined[w] = in.readBoolean();
+                int t = in.readInt();
+                waiting[w] = t == -1 ? null : answers.getTask(t);
+            }
+            answers.restore(in);
+            for (int t = 0; t < answers.getTaskNum(); t++) {
+                Task task = answers.getTask(t);
+                task.restore(in);
+                if (task.getRole() == Task.PROMOTED) {
+                    id_to_golden.put(task.getTaskId(), task);
+                }
+            }
+            for (int w = 0; w < answers.getWorkerNum(); w++) {
+                Worker worker = answers.getWorker(w);
+                worker.restore(in);
+                if (joined[w] && !worker.isBanned()) {
+                    workers.add(worker);
+                }
+            }
+            index.restore(in);
+            queue.restore(in);
+            String kind = in.readUTF();
+            byte[] block = new byte[in.readInt()];
+            in.readFully(block);
+            if (kind.equals(td_kind)) {
+                etd.restore(new DataInputStream(new ByteArrayInputStream(block)));
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /* add a worker to U at her first request (under the lock of the worker) */
+    private void join(Worker worker) {
+        if (!joined[worker.getIndex()]) {
+            joined[worker.getIndex()] = true;
+            synchronized (workers) {
+                workers.add(worker);
+            }
+        }
+    }
+
+    /* update s_j, r_j and p_j after a worker labels a golden task, and ban her if her Sybil score passes the threshold */
+    private void labelGolden(Worker worker, Task task, int label) {
+        golden_num++;
+        worker.label(task, label);
+        etd.onLabel(worker, task, label);
+
+        // update s_j, r_j and p_j from the golden task counters that the tasks keep up to date
+        int s_count = worker.getGoldenShared();
+        int r_count = worker.getGoldenNum();
+        double r_correct = worker.getGoldenCorrect();
+
+        double old_r = worker.getR();
+        worker.setS(2.0 / (1 + Math.pow(Math.E, -s_count)) - 1);
+        etd.onScore(worker);
+        worker.setR((2.0 / (1 + Math.pow(Math.E, -r_count / 3)) - 1) * r_correct / r_count);
+        worker.setP(r_correct / r_count);
+        index.onReliability(worker, old_r);
+        queue.onReliability(worker);
+
+        // ban the worker if her Sybil score passes the Sybil threshold
+        if (worker.getS() >= tau) {
+            ban(worker, SYBIL);
+        }
+    }
+
+    /* record the label of a worker on a normal task */
+    private void labelNormal(Worker worker, Task task, int label) {
+        worker.label(task, label);
+        etd.onLabel(worker, task, label);
+        queue.onChange(task);
+
+        // update the number of completed tasks that can be promoted
+        if (task.getAssignedNum() >= K) {
+            task.calCi();
+            if (task.getCi() >= delta) {
+                promotion_num++;
+            }
+        }
+    }
+
+    /* run the batch if its condition is met and check the deference of the worker at the end of her request */
+    private void endRequest(Worker worker) {
+        // if the batch condition is met, update aggregated labels and promote tasks
+        // (a continuation of a checkpoint with a smaller B may have passed it already)
+        if (promotion_num >= B) {
+            runBatch();
+            promotion_num = 0;
+        }
+
+        //new deference function
+        // the CLT/CLR/CHT/CHR counters are kept up to date by the tasks on every label and aggregation change
+        double ls = 0, hs = 0;
+        //version1
+        //if (worker.getCLT() > 0) ls = worker.getCLR() / worker.getCLT();
+        //if (worker.getCHT() > 0) hs = worker.getCHR() / worker.getCHT();
+
+        //version2
+        if (worker.getCLT() > 0) ls = worker.getCLR() / worker.getCLT() * (2 / (1 + Math.pow(Math.E, -worker.getCLT())) - 1);
+        if (worker.getCHT() > 0) hs = worker.getCHR() / worker.getCHT() * (2 / (1 + Math.pow(Math.E, -worker.getCHT())) - 1);
+
+        if (ls >= 0.7 && hs <= 1 / L + 0.1) {
+            //if (ls >= 0.8 && hs >= 0.8) {
+            ban(worker, DEFERENCE);
+        }
+    }
+
+    /* update the aggregated labels of normal tasks, or hand them to the background thread */
+    private void runBatch() {
+        if (background != null && pending != null) {
+            batch_due = true;
+            return;
+        }
+        batch.clear();
+        for (Task task : id_to_task.values()) {
+            if (!task.isGolden()) {
+                batch.add(task);
+            }
+        }
+        if (background != null) {
+            pending = background.submit(new Snapshot(batch, workers));
+            return;
+        }
+        long start = System.nanoTime();
+        // run extended truth discovery
+        long phase = startPhase();
+        if (etd.isIncremental()) {
+            etd.update(workers);
+        } else {
+            etd.process(batch, workers);
+        }
+        etd_iteration_num += etd.getIterationNum();
+        endPhase(ETD, phase);
+        promote();
+        batch_num++;
+        latencies[BATCH].record(System.nanoTime() - start);
+    }
+
+    /* apply the batch aggregated in the background if it is ready, taking the write lock only then */
+    private void applyReady() {
+        Future<Snapshot> ready = pending;
+        if (ready != null && ready.isDone()) {
+            long stamp = lock.writeLock();
+            try {
+                applyBatch(false);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /* apply the batch aggregated in the background once it is ready (or wait for it) */
+    private void applyBatch(boolean wait) {
+        if (pending == null || !wait && !pending.isDone()) {
+            return;
+        }
+        try {
+            Snapshot snapshot = pending.get();
+            snapshot.apply();
+            etd_iteration_num += snapshot.getIterationNum();
+            if (instrumented) {
+                recordPhase(ETD, snapshot.getTime());
+            }
+            promote();
+            batch_num++;
+            latencies[BATCH].record(snapshot.getTime());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        pending = null;
+        if (batch_due) {
+            batch_due = false;
+            runBatch();
+        }
+    }
+
+    /* settle the aggregated labels of the batch and promote the tasks reaching the reliability threshold */
+    private void promote() {
+        long phase = startPhase();
+        for (Task task : batch) {
+            task.settleAggregated();
+        }
+        // only the tasks changed since the previous batch can reach the reliability threshold
+        for (Task task = queue.poll(); task != null; task = queue.poll()) {
+            if (task.getAssignedNum() >= K) {
+                task.calCi();
+                if (task.getCi() >= delta) {
+                    task.promote();
+                    id_to_golden.put(task.getTaskId(), task);
+                    index.promote(task);
+                    promoted_num++;
+                }
+            }
+        }
+        endPhase(PROMOTION, phase);
+    }
+
+    /* ban a worker for a reason (SYBIL or DEFERENCE) and remove her labels on normal tasks */
+    private void ban(Worker worker, int reason) {
+        if (worker.isBanned()) {
+            return;
+        }
+        long phase = startPhase();
+        worker.ban();
+        ban_num++;
+        reason_nums[reason]++;
+        workers.remove(worker);
+        // truth discovery reads the labels before they are removed
+        for (int j = 0; j < worker.getLabeledNum(); j++) {
+            Task task = worker.getLabeledTask(j);
+            if (!task.isGolden()) {
+                etd.onRemove(worker, task);
+            }
+        }
+        int revoked_num = answers.revoke(worker.getIndex());
+        for (int i = 0; i < revoked_num; i++) {
+            Task task = answers.getTask(answers.revokedTask(i));
+            task.expose();
+            exposure_num++;
+            task.revoke(worker, answers.revokedLabel(i));
+            index.onRemove(worker, task);
+            queue.onChange(task);
+        }
+        endPhase(BAN, phase);
+    }
+
+    /* return the start time of a call if it is timed (UNTIMED otherwise) */
+    private long start() {
+        return ThreadLocalRandom.current().nextInt(TIMED) == 0 ? System.nanoTime() : UNTIMED;
+    }
+
+    /* record the latency of a call if it is timed */
+    private void end(int call, long start) {
+        if (start != UNTIMED) {
+            synchronized (latencies[call]) {
+                latencies[call].record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /* return the start time of a phase if the engine is instrumented (UNTIMED otherwise) */
+    private long startPhase() {
+        return instrumented ? System.nanoTime() : UNTIMED;
+    }
+
+    /* record the latency of a phase if it is timed */
+    private void endPhase(int phase, long start) {
+        if (start != UNTIMED) {
+            recordPhase(phase, System.nanoTime() - start);
+        }
+    }
+
+    /* record the latency of a phase, where assignments of different workers record at the same time */
+    private void recordPhase(int phase, long nanos) {
+        synchronized (phases[phase]) {
+            phases[phase].record(nanos);
+        }
+    }
+
+    /* return the worker of an ID */
+    private Worker getWorker(int worker_id) {
+        Worker worker = id_to_worker.get(worker_id);
+        if (worker == null) {
+            throw new IllegalArgumentException("Unknown worker " + worker_id);
+        }
+        return worker;
+    }
+
+    /* return the normal or golden task of an ID */
+    private Task getTask(int task_id) {
+        Task task = id_to_task.get(task_id);
+        if (task == null) {
+            task = id_to_golden.get(task_id);
+        }
+        if (task == null) {
+            throw new IllegalArgumentException("Unknown task " + task_id);
+        }
+        return task;
+    }
+
+    /* copy of the labels, scores and aggregated labels that a batch aggregates in the background */
+    private class Snapshot implements Callable<Snapshot> {
+        private SparseLabels labels; // flat copy of the labels of the batch
+        private long time; // time of the aggregation in nanoseconds
+        private int iteration_num; // number of iterations of the aggregation
+
+        /* copy the run state on the calling thread, which only copies flat arrays (see SparseLabels.copy) */
+        Snapshot(Collection<Task> batch, Collection<Worker> workers) {
+            labels = SparseLabels.copy(batch, workers, L);
+        }
+
+        /* aggregate the copy with a full pass of truth discovery */
+        public Snapshot call() {
+            long start = System.nanoTime();
+            labels.build();
+            TruthDiscovery copy_etd = TruthDiscovery.of(td_kind, L);
+            if (etd_pool != null) {
+                copy_etd.setPool(etd_pool);
+            }
+            copy_etd.process(labels);
+            iteration_num = copy_etd.getIterationNum();
+            time = System.nanoTime() - start;
+            return this;
+        }
+
+        /* set the aggregated labels and weights of the run from the copy */
+        void apply() {
+            labels.apply();
+        }
+
+        /* return the time of the aggregation in nanoseconds */
+        long getTime() {
+            return time;
+        }
+
+        /* return the number of iterations of the aggregation */
+        int getIterationNum() {
+            return iteration_num;
+        }
+    }
+
+    /**
+     * Metrics is a snapshot of the numbers of activities served by an engine and the
+     * latencies of its timed calls and, if the engine is instrumented, of its phases.
+     */
+    public static class Metrics {
+        private long request_num; // number of requests
+        private long label_num; // number of labels
+        private long golden_num; // number of labels on golden tasks
+        private long ban_num; // number of banned workers
+        private long[] reason_nums; // number of banned workers for each reason
+        private long exposure_num; // number of labels revoked from banned workers
+        private long batch_num; // number of applied batches
+        private long etd_iteration_num; // number of iterations of extended truth discovery in batches
+        private int final_iteration_num; // number of iterations of the final pass of extended truth discovery
+        private long promoted_num; // number of promoted tasks
+        private Latency[] latencies; // latencies of each kind of timed call
+        private boolean instrumented; // whether the phases are timed
+        private Latency[] phases; // latencies of each phase
+
+        /* copy the metrics of an engine */
+        private Metrics(TDSSAEngine engine) {
+            request_num = engine.request_num.sum();
+            label_num = engine.label_num;
+            golden_num = engine.golden_num;
+            ban_num = engine.ban_num;
+            reason_nums = engine.reason_nums.clone();
+            exposure_num = engine.exposure_num;
+            batch_num = engine.batch_num;
+            etd_iteration_num = engine.etd_iteration_num;
+            final_iteration_num = engine.final_iteration_num;
+            promoted_num = engine.promoted_num;
+            latencies = new Latency[CALLS.length];
+            for (int i = 0; i < CALLS.length; i++) {
+                synchronized (engine.latencies[i]) {
+                    latencies[i] = engine.latencies[i].copy();
+                }
+            }
+            instrumented = engine.instrumented;
+            phases = new Latency[PHASES.length];
+            for (int i = 0; i < PHASES.length; i++) {
+                synchronized (engine.phases[i]) {
+                    phases[i] = engine.phases[i].copy();
+                }
+            }
+        }
+
+        /* return the number of requests */
+        public long getRequestNum() {
+            return request_num;
+        }
+
+        /* return the number of labels */
+        public long getLabelNum() {
+            return label_num;
+        }
+
+        /* return the number of labels on golden tasks */
+        public long getGoldenNum() {
+            return golden_num;
+        }
+
+        /* return the number of banned workers */
+        public long getBanNum() {
+            return ban_num;
+        }
+
+        /* return the number of banned workers for a reason (SYBIL or DEFERENCE) */
+        public long getBanNum(int reason) {
+            return reason_nums[reason];
+        }
+
+        /* return the number of labels revoked from banned workers */
+        public long getExposureNum() {
+            return exposure_num;
+        }
+
+        /* return the number of applied batches */
+        public long getBatchNum() {
+            return batch_num;
+        }
+
+        /* return the number of iterations of extended truth discovery in batches */
+        public long getETDIterationNum() {
+            return etd_iteration_num;
+        }
+
+        /* return the number of iterations of the final pass of extended truth discovery */
+        public int getFinalIterationNum() {
+            return final_iteration_num;
+        }
+
+        /* return the number of promoted tasks */
+        public long getPromotedNum() {
+            return promoted_num;
+        }
+
+        /* return the latencies of a kind of timed call (REQUEST, LABEL, AGGREGATE or BATCH) */
+        public Latency getLatency(int call) {
+            return latencies[call];
+        }
+
+        /* return whether the phases are timed */
+        public boolean isInstrumented() {
+            return instrumented;
+        }
+
+        /* return the latencies of a phase (ASSIGN, GOLDEN_UPDATE, NORMAL_LABEL, BAN, PROMOTION, ETD or FINAL_ETD) */
+        public Latency getPhase(int phase) {
+            return phases[phase];
+        }
+
+        /* return the counters and the latencies in nanoseconds by name, in a fixed order (phases only if timed) */
+        public LinkedHashMap<String, Number> toMap() {
+            LinkedHashMap<String, Number> map = new LinkedHashMap<String, Number>();
+            map.put("requests", request_num);
+            map.put("labels", label_num);
+            map.put("golden_labels", golden_num);
+            map.put("bans", ban_num);
+            for (int i = 0; i < REASONS.length; i++) {
+                map.put("bans_" + REASONS[i], reason_nums[i]);
+            }
+            map.put("exposures", exposure_num);
+            map.put("batches", batch_num);
+            map.put("etd_iterations", etd_iteration_num);
+            map.put("final_etd_iterations", final_iteration_num);
+            map.put("promotions", promoted_num);
+            for (int i = 0; i < CALLS.length; i++) {
+                putLatency(map, CALLS[i], latencies[i]);
+            }
+            if (instrumented) {
+                for (int i = 0; i < PHASES.length; i++) {
+                    putLatency(map, PHASES[i], phases[i]);
+                }
+            }
+            return map;
+        }
+
+        /* put the count, mean, percentiles and maximum of latencies by name */
+        private static void putLatency(Map<String, Number> map, String name, Latency latency) {
+            map.put(name + "_count", latency.getCount());
+            map.put(name + "_mean_ns", latency.getMean());
+            map.put(name + "_p50_ns", latency.percentile(0.5));
+            map.put(name + "_p99_ns", latency.percentile(0.99));
+            map.put(name + "_max_ns", latency.getMax());
+        }
+
+        /* return the metrics in one line, with latencies in microseconds */
+        public String toString() {
+            StringBuilder line = new StringBuilder();
+            line.append("Requests:").append(request_num).append("  Labels:").append(label_num).append("  Golden:").append(golden_num)
+                    .append("  Bans:").append(ban_num).append("  Batches:").append(batch_num).append("  Promoted:").append(promoted_num);
+            for (int i = 0; i < CALLS.length; i++) {
+                line.append(String.format("  %s p50/p99:%.1f/%.1fus", CALLS[i],
+                        latencies[i].percentile(0.5) / 1000.0, latencies[i].percentile(0.99) / 1000.0));
+            }
+            return line.toString();
+        }
+    }
+}
@@ -1,38 +1,59 @@
 /**
  * Task.java provides the modeling of tasks. Each task is associated with an average
  * reliability of workers on the task and a true label. A task is completed once the
- * aggregated label is determined.
+ * aggregated label is determined. The workers and labels on the task are kept in the
+ * shared AnswerMatrix, while the task keeps the number of votes on each label and the
+ * sum of reliability scores of assigned workers up to date as workers are assigned,
+ * label, are removed and change their reliability scores. A golden task also keeps its
+ * majority labels up to date and passes every change of its labels or majority labels
+ * to the golden task counters of its assigned workers. Likewise, the labels on a task are
+ * counted in the reward-tier counters of their workers for the STDEL deference check.
  */
 
-import java.util.ArrayList;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 public class Task {
-    private ArrayList<Worker> workers; // assigned workers in the original data
-    private ArrayList<Worker> assigned; // current assigned workers
+    /* task roles */
+    public static final int NORMAL = 0; // normal task
+    public static final int GOLDEN = 1; // original golden task
+    public static final int PROMOTED = 2; // normal task promoted to a golden task
+
+    private AnswerMatrix answers; // original and current labels of workers
     private int true_label; // true label of the task
     private int aggregated; // aggregated label of the task
     private int[] majority; // majority indicator (1 means that the corresponding label is a majority vote)
+    private int[] votes; // number of current labels on each optional label
+    private double r_sum; // sum of reliability scores of assigned workers
     private int L; // label size
     private int task_id; // task ID
+    private int index; // dense ordinal of the task
     private double c_i; // average reliability score of assigned workers
     private double[] conf; // confidence on each optional label
     private int exposed; // number of times assigned to banned workers
+    private int role; // role of the task in the current run (NORMAL, GOLDEN or PROMOTED)
+    private int promoted_truth; // aggregated label of the task when it was promoted
 
     //new
     private int task_reward; //reward of task
+    private boolean high_reward; // whether the reward is above the tier boundary of the deference check
+    private int tier_aggregated; // aggregated label that the high-reward counters of assigned workers agree with
 
     /* initialization */
     public Task(int task_id, int true_label, int L) {
-        workers = new ArrayList<Worker>();
-        assigned = new ArrayList<Worker>();
         this.true_label = true_label;
         aggregated = -1;
         majority = new int[L];
+        votes = new int[L];
+        r_sum = 0.0;
         this.L = L;
         this.task_id = task_id;
         c_i = 0.0;
         conf = new double[L];
         exposed = 0;
+        role = NORMAL;
+        tier_aggregated = -1;
     }
 
     /* set the confidence on each optional label */
@@ -50,29 +71,187 @@ public class Task {
         return task_id;
     }
 
-    /* update the original assigned workers for the task */
-    public void addWorker(Worker worker) {
-        workers.add(worker);
+    /* set the dense ordinal of the task */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    /* return the dense ordinal of the task */
+    public int getIndex() {
+        return index;
+    }
+
+    /* set the role of the task */
+    public void setRole(int role) {
+        this.role = role;
+    }
+
+    /* return the role of the task */
+    public int getRole() {
+        return role;
+    }
+
+    /* check whether the task is in the golden task set (original or promoted golden task) */
+    public boolean isGolden() {
+        return role != NORMAL;
+    }
+
+    /* check whether the task is in the normal task set (normal or promoted golden task) */
+    public boolean isNormal() {
+        return role != GOLDEN;
+    }
+
+    /* promote a completed normal task to a golden task */
+    public void promote() {
+        if (role == NORMAL) {
+            role = PROMOTED;
+            // batches only aggregate normal tasks, so the aggregated label stays the truth of the promoted task
+            promoted_truth = aggregated;
+            calMajority();
+            int assigned_num = answers.assignedNum(index);
+            for (int i = 0; i < assigned_num; i++) {
+                Worker worker = answers.getWorker(answers.assignedWorker(index, i));
+                worker.countGolden(1, 0, 0);
+                countLabel(worker, answers.assignedLabel(index, i), 1);
+            }
+        }
+    }
+
+    /* return the label that labels on the golden task are checked against */
+    private int goldenTruth() {
+        return role == PROMOTED ? promoted_truth : true_label;
+    }
+
+    /* add (sign = 1) or take back (sign = -1) the part of the golden task counters of a worker that depends on her label */
+    private void countLabel(Worker worker, int label, int sign) {
+        int truth = goldenTruth();
+        int shared = label != -1 && majority[label] == 1 && label != truth ? sign : 0; // a majority label that is not the truth
+        int correct = label == truth ? sign : 0;
+        worker.countGolden(0, shared, correct);
     }
 
-    /* return the original assigned workers for the task */
-    public ArrayList<Worker> getWorkers() {
-        return workers;
+    /* update the majority labels of a golden task and pass the changes to the assigned workers except the given one */
+    private void refreshMajority(Worker except) {
+        int max_vote = 0;
+        for (int i = 0; i < L; i++) {
+            if (votes[i] > max_vote) {
+                max_vote = votes[i];
+            }
+        }
+        int truth = goldenTruth();
+        int assigned_num = answers.assignedNum(index);
+        for (int i = 0; i < L; i++) {
+            int indicator = votes[i] == max_vote && max_vote >= 2 ? 1 : 0;
+            if (indicator == majority[i]) {
+                continue;
+            }
+            majority[i] = indicator;
+            if (i == truth) {
+                continue;
+            }
+            // only the workers with this label share a different majority label now
+            for (int j = 0; j < assigned_num; j++) {
+                if (answers.assignedLabel(index, j) == i) {
+                    Worker worker = answers.getWorker(answers.assignedWorker(index, j));
+                    if (worker != except) {
+                        worker.countGolden(0, indicator == 1 ? 1 : -1, 0);
+                    }
+                }
+            }
+        }
+    }
+
+    /* set the matrix that stores the labels on the task */
+    public void setAnswers(AnswerMatrix answers) {
+        this.answers = answers;
+    }
+
+    /* return the matrix that stores the labels on the task */
+    public AnswerMatrix getAnswers() {
+        return answers;
+    }
+
+    /* return the number of assigned workers in the original data */
+    public int getWorkerNum() {
+        return answers.taskEnd(index) - answers.taskStart(index);
+    }
+
+    /* return the ith assigned worker in the original data */
+    public Worker getWorker(int i) {
+        return answers.getWorker(answers.taskWorker(answers.taskStart(index) + i));
     }
 
     /* assign a worker to the task */
     public void assign(Worker worker) {
-        assigned.add(worker);
+        answers.assign(worker.getIndex(), index);
+        r_sum += worker.getR();
+        countTier(worker, -1, 1);
+        if (isGolden()) {
+            // the task counts as a golden task of the worker before she labels it
+            worker.countGolden(1, 0, 0);
+        }
+    }
+
+    /* return the number of current assigned workers */
+    public int getAssignedNum() {
+        return answers.assignedNum(index);
+    }
+
+    /* return the ith current assigned worker */
+    public Worker getAssignedWorker(int i) {
+        return answers.getWorker(answers.assignedWorker(index, i));
     }
 
-    /* return assigned workers */
-    public ArrayList<Worker> getAssigned() {
-        return assigned;
+    /* return the current label of the ith assigned worker */
+    public int getAssignedLabel(int i) {
+        return answers.assignedLabel(index, i);
     }
 
     /* remove a banned worker from assigned workers for a normal task */
     public void remove(Worker worker) {
-        assigned.remove(worker);
+        revoke(worker, answers.remove(worker.getIndex(), index));
+    }
+
+    /* update the task after the label of a banned worker has been removed from the answer matrix */
+    public void revoke(Worker worker, int label) {
+        if (label != -1) {
+            votes[label]--;
+        }
+        countTier(worker, label, -1);
+        if (isGolden()) {
+            countLabel(worker, label, -1);
+            worker.countGolden(-1, 0, 0);
+            refreshMajority(null);
+        }
+        r_sum -= worker.getR();
+        if (answers.assignedNum(index) == 0) {
+            // drop the rounding errors accumulated by the running sum
+            r_sum = 0.0;
+        }
+    }
+
+    /* update the number of votes after an assigned worker changes her label from old_label to label (-1 means no label) */
+    public void vote(Worker worker, int old_label, int label) {
+        countTier(worker, old_label, -1);
+        countTier(worker, label, 1);
+        if (isGolden()) {
+            countLabel(worker, old_label, -1);
+        }
+        if (old_label != -1) {
+            votes[old_label]--;
+        }
+        if (label != -1) {
+            votes[label]++;
+        }
+        if (isGolden()) {
+            refreshMajority(worker);
+            countLabel(worker, label, 1);
+        }
+    }
+
+    /* update the sum of reliability scores after an assigned worker changes her reliability score from old_r to r */
+    public void onReliability(double old_r, double r) {
+        r_sum += r - old_r;
     }
 
     /* return the true label */
@@ -90,21 +269,42 @@ public class Task {
         return aggregated;
     }
 
+    /* pass a change of the aggregated label since the last call to the high-reward counters of assigned workers */
+    public void settleAggregated() {
+        if (aggregated == tier_aggregated) {
+            return;
+        }
+        if (high_reward) {
+            int assigned_num = answers.assignedNum(index);
+            for (int i = 0; i < assigned_num; i++) {
+                int label = answers.assignedLabel(index, i);
+                if (label == tier_aggregated || label == aggregated) {
+                    answers.getWorker(answers.assignedWorker(index, i)).countHigh(0, label == aggregated ? 1 : -1);
+                }
+            }
+        }
+        tier_aggregated = aggregated;
+    }
+
+    /* add (sign = 1) or take back (sign = -1) a label of a worker in her reward-tier counters */
+    private void countTier(Worker worker, int label, int sign) {
+        if (high_reward) {
+            worker.countHigh(sign, label == tier_aggregated ? sign : 0);
+        } else {
+            worker.countLow(sign, label == true_label ? sign : 0);
+        }
+    }
+
     /* compute the indicator of majority labels that receive the most votes */
     public void calMajority() {
         int max_vote = 0;
         for (int i = 0; i < L; i++) {
-            majority[i] = 0;
-        }
-        for (Worker worker : assigned) {
-            int answer = worker.getLabeledPairs().get(this);
-            majority[answer]++;
-            if (majority[answer] > max_vote) {
-                max_vote = majority[answer];
+            if (votes[i] > max_vote) {
+                max_vote = votes[i];
             }
         }
         for (int i = 0; i < L; i++) {
-            if (majority[i] == max_vote && max_vote >= 2) {
+            if (votes[i] == max_vote && max_vote >= 2) {
                 majority[i] = 1;
             } else {
                 majority[i] = 0;
@@ -129,12 +329,7 @@ public class Task {
 
     /* compute the average reliability of assigned workers */
     public void calCi() {
-        c_i = 0.0;
-        for (Worker worker : assigned) {
-            double r_j = worker.getR();
-            c_i += r_j;
-        }
-        c_i = c_i / assigned.size();
+        c_i = r_sum / answers.assignedNum(index);
     }
 
     /* return the average reliability of assigned workers */
@@ -142,15 +337,35 @@ public class Task {
         return c_i;
     }
 
-    /* reset the features of the task for a new run */
-    public void reset() {
-        assigned = new ArrayList<Worker>();
-        aggregated = -1;
-        c_i = 0.0;
-        conf = new double[L];
-        exposed = 0;
+    /* write the role, labels, votes and reliability of the task into a checkpoint */
+    public void save(DataOutputStream out) throws IOException {
+        out.writeInt(role);
+        out.writeInt(aggregated);
+        out.writeInt(promoted_truth);
+        out.writeInt(tier_aggregated);
+        out.writeInt(exposed);
+        out.writeDouble(r_sum);
+        out.writeDouble(c_i);
+        for (int i = 0; i < L; i++) {
+            out.writeInt(votes[i]);
+            out.writeByte(majority[i]);
+        }
     }
 
+    /* restore the role, labels, votes and reliability of the task from a checkpoint */
+    public void restore(DataInputStream in) throws IOException {
+        role = in.readInt();
+        aggregated = in.readInt();
+        promoted_truth = in.readInt();
+        tier_aggregated = in.readInt();
+        exposed = in.readInt();
+        r_sum = in.readDouble();
+        c_i = in.readDouble();
+        for (int i = 0; i < L; i++) {
+            votes[i] = in.readInt();
+            majority[i] = in.readByte();
+        }
+    }
 
     //new
     /* return the task reward */
@@ -162,4 +377,9 @@ public class Task {
     public int getTask_reward() {
         return task_reward;
     }
+
+    /* set whether the reward is above the tier boundary of the deference check */
+    public void setHighReward(boolean high_reward) {
+        this.high_reward = high_reward;
+    }
 }
@@ -0,0 +1,79 @@
+/**
+ * TruthDiscovery.java describes how the labels of workers on normal tasks are aggregated
+ * into the aggregated labels of the tasks and the weights of the workers, in the batches
+ * and in the final pass of a run. Extended truth discovery ("etd"), which weighs the labels
+ * by the Sybil scores and the chi-squared weights of workers, is the aggregation of TDSSA.
+ * Weighted majority voting ("majority"), Dawid-Skene ("ds") and CATD ("catd") are provided
+ * for comparison, and other aggregations can be plugged in the same way. A full pass of
+ * every aggregation runs on the shared sparse labels of the pass (see SparseLabels). Only
+ * extended truth discovery has the incremental mode, and the others run a full pass in
+ * every batch.
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+
+public interface TruthDiscovery {
+    /* aggregate the current labels of workers on tasks, setting the aggregated labels of the tasks and the weights of the workers */
+    void process(Collection<Task> tasks, Collection<Worker> workers);
+
+    /* aggregate the sparse labels of a pass, updating their aggregated labels and setting their weights (see SparseLabels.apply) */
+    void process(SparseLabels labels);
+
+    /* return the number of iterations of the latest pass (or rounds of the latest incremental update) */
+    int getIterationNum();
+
+    /* run the passes on a pool where supported (null means sequential) */
+    default void setPool(ForkJoinPool pool) {
+    }
+
+    /* return whether batches update the aggregated labels incrementally instead of running a pass */
+    default boolean isIncremental() {
+        return false;
+    }
+
+    /* update the aggregated labels of normal tasks after a batch in the incremental mode */
+    default void update(Collection<Worker> workers) {
+        throw new UnsupportedOperationException("Truth discovery is not incremental");
+    }
+
+    /* record a new label of a worker on a task */
+    default void onLabel(Worker worker, Task task, int label) {
+    }
+
+    /* record the removal of a worker's label on a task (called before the removal) */
+    default void onRemove(Worker worker, Task task) {
+    }
+
+    /* record a change of the Sybil score of a worker */
+    default void onScore(Worker worker) {
+    }
+
+    /* write the state kept across passes into a checkpoint */
+    default void save(DataOutputStream out) throws IOException {
+    }
+
+    /* restore the state kept across passes from a checkpoint of the same kind of truth discovery */
+    default void restore(DataInputStream in) throws IOException {
+    }
+
+    /* return the truth discovery of a kind ("etd", "majority", "ds" or "catd") with a label size */
+    static TruthDiscovery of(String kind, int L) {
+        if (kind.equals("etd")) {
+            return new ExtendedTD(L);
+        }
+        if (kind.equals("majority")) {
+            return new WeightedMajority(L);
+        }
+        if (kind.equals("ds")) {
+            return new DawidSkene(L);
+        }
+        if (kind.equals("catd")) {
+            return new CATD(L);
+        }
+        throw new IllegalArgumentException("Unknown truth discovery " + kind);
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * WeightedMajority.java provides weighted majority voting for comparison with extended
+ * truth discovery. A pass starts from the majority votes of the labels, and then iterates
+ * the weighted votes of tasks and the weights of workers, where the weight of a worker is
+ * the fraction of her labels that agree with the aggregated labels (the correct/count
+ * weighting of earlier versions), until the aggregated labels no longer change.
+ */
+
+import java.util.Arrays;
+import java.util.Collection;
+
+public class WeightedMajority implements TruthDiscovery {
+    private static final int MAX_ITERATION = 1000; // maximum number of iterations of a pass
+
+    private int L; // label size
+    private int iteration_num; // number of iterations of the latest pass
+
+    /* initialization */
+    public WeightedMajority(int L) {
+        this.L = L;
+    }
+
+    /* aggregate the current labels of tasks by workers in a pass */
+    public void process(Collection<Task> tasks, Collection<Worker> workers) {
+        SparseLabels labels = new SparseLabels(tasks, workers, L);
+        process(labels);
+        labels.apply();
+    }
+
+    /* iteratively run weighted majority voting */
+    public void process(SparseLabels labels) {
+        int[] aggregated = labels.getAggregated();
+        double[] weights = labels.getWeights();
+        // outside voters keep their weights
+        Arrays.fill(weights, 0, labels.getWorkerNum(), 1);
+
+        int iteration = 0;
+        while (iteration < MAX_ITERATION) {
+            iteration++;
+            // the first iteration always estimates the weights from the majority votes
+            if (labels.vote(weights, aggregated) == 0 && iteration > 1) {
+                break;
+            }
+            for (int w = 0; w < labels.getWorkerNum(); w++) {
+                int label_num = labels.workerEnd(w) - labels.workerStart(w);
+                if (label_num > 0) {
+                    weights[w] = 1 - (double) labels.errors(w, aggregated) / label_num;
+                }
+            }
+        }
+        iteration_num = iteration;
+    }
+
+    /* return the number of iterations of the latest pass */
+    public int getIterationNum() {
+        return iteration_num;
+    }
+}
@@ -2,22 +2,27 @@
  * Worker.java provides the modeling of online workers. Each worker is associated with
  * a Sybil score, a reliability score and an accuracy on golden tasks. The attacker id
  * indicates which Sybil attacker controls the worker. Independent workers will have a
- * -1 attacker id.
+ * -1 attacker id. The (task, label) pairs of the worker are kept in the shared
+ * AnswerMatrix.
  */
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 public class Worker {
-    private Map<Task, Integer> pairs; // the (task, label) pairs in the original dataset
-    private Map<Task, Integer> labeled_pairs; // the (task, label) pairs for tasks currently assigned to the worker
+    private AnswerMatrix answers; // original and current labels of workers
     private double s_j; // Sybil score
     private double r_j; // reliability score
     private double p_j; // accuracy on golden tasks
     private int attacker_id; // indicate which attacker the worker belongs to (-1 means independent worker)
     private int worker_id; // worker ID
+    private int index; // dense ordinal of the worker
     private double weight; // weight of the worker's labels in extended truth discovery
     private boolean banned; // indicate whether the worker is banned
+    private int golden_num; // number of assigned golden tasks
+    private int golden_shared; // number of labels on assigned golden tasks that are a majority label but not the truth
+    private int golden_correct; // number of labels on assigned golden tasks that are the truth
 
 
     //new
@@ -28,8 +33,6 @@ public class Worker {
 
     /* initialization */
     public Worker(int worker_id) {
-        pairs = new HashMap<Task, Integer>();
-        labeled_pairs = new HashMap<Task, Integer>();
         s_j = 0;
         r_j = 0;
         p_j = 0;
@@ -50,29 +53,86 @@ public class Worker {
         return worker_id;
     }
 
-    /* add a (task, label) pair in the original dataset */
-    public void addPair(Task task, int label) {
-        pairs.put(task, label);
+    /* set the dense ordinal of the worker */
+    public void setIndex(int index) {
+        this.index = index;
     }
 
-    /* return the (task, label) pairs in the original dataset */
-    public Map<Task, Integer> getPairs() {
-        return pairs;
+    /* return the dense ordinal of the worker */
+    public int getIndex() {
+        return index;
     }
 
-    /* update the current (task, label) pair */
+    /* set the matrix that stores the labels of the worker */
+    public void setAnswers(AnswerMatrix answers) {
+        this.answers = answers;
+    }
+
+    /* return the number of (task, label) pairs in the original dataset */
+    public int getPairNum() {
+        return answers.workerEnd(index) - answers.workerStart(index);
+    }
+
+    /* return the task of the ith (task, label) pair in the original dataset */
+    public Task getPairTask(int i) {
+        return answers.getTask(answers.workerTask(answers.workerStart(index) + i));
+    }
+
+    /* return the label on a task in the original dataset (-1 if the worker did not label the task) */
+    public int getAnswer(Task task) {
+        return answers.getAnswer(index, task.getIndex());
+    }
+
+    /* update the current (task, label) pair of an assigned task */
     public void label(Task task, int label) {
-        labeled_pairs.put(task, label);
+        task.vote(this, answers.label(index, task.getIndex(), label), label);
+    }
+
+    /* check whether a task is currently assigned to the worker */
+    public boolean isAssigned(Task task) {
+        return answers.isAssigned(index, task.getIndex());
     }
 
-    /* return the current (task, label) pairs */
-    public Map<Task, Integer> getLabeledPairs() {
-        return labeled_pairs;
+    /* return the current label on a task (-1 if the task is not assigned to the worker) */
+    public int getLabel(Task task) {
+        return answers.getLabel(index, task.getIndex());
     }
 
-    /* remove the label of a task labeled by the banned worker */
-    public void remove(Task task) {
-        labeled_pairs.remove(task);
+    /* return the number of current (task, label) pairs */
+    public int getLabeledNum() {
+        return answers.labeledNum(index);
+    }
+
+    /* return the task of the ith current (task, label) pair */
+    public Task getLabeledTask(int i) {
+        return answers.getTask(answers.labeledTask(index, i));
+    }
+
+    /* return the label of the ith current (task, label) pair */
+    public int getLabeledLabel(int i) {
+        return answers.labeledLabel(index, i);
+    }
+
+    /* update the golden task counters by the changes of the worker's golden tasks and labels on them */
+    public void countGolden(int num, int shared, int correct) {
+        golden_num += num;
+        golden_shared += shared;
+        golden_correct += correct;
+    }
+
+    /* return the number of assigned golden tasks */
+    public int getGoldenNum() {
+        return golden_num;
+    }
+
+    /* return the number of labels on assigned golden tasks that are a majority label but not the truth */
+    public int getGoldenShared() {
+        return golden_shared;
+    }
+
+    /* return the number of labels on assigned golden tasks that are the truth */
+    public int getGoldenCorrect() {
+        return golden_correct;
     }
 
     /* set the Sybil score */
@@ -85,8 +145,11 @@ public class Worker {
         return s_j;
     }
 
-    /* set the reliability score */
+    /* set the reliability score, which is also passed to the reliability sums of assigned tasks */
     public void setR(double r) {
+        for (int i = 0; i < answers.labeledNum(index); i++) {
+            answers.getTask(answers.labeledTask(index, i)).onReliability(r_j, r);
+        }
         r_j = r;
     }
 
@@ -135,20 +198,59 @@ public class Worker {
         return banned;
     }
 
-    /* reset the features of the worker for a new run */
-    public void reset() {
-        labeled_pairs = new HashMap<Task, Integer>();
-        s_j = 0;
-        r_j = 0;
-        attacker_id = -1;
-        weight = 0.8;
-        banned = false;
+    /* carry over the features that earlier versions kept across runs from the same worker in the previous run */
+    public void carryOver(Worker previous) {
+        // the accuracy on golden tasks and the deference counters were never reset between runs
+        p_j = previous.p_j;
+        coutLowReward = previous.coutLowReward;
+        coutLowTask = previous.coutLowTask;
+        coutHightReward = previous.coutHightReward;
+        coutHightTask = previous.coutHightTask;
+    }
+
+    /* write the scores, weight, ban and counters of the worker into a checkpoint */
+    public void save(DataOutputStream out) throws IOException {
+        out.writeDouble(s_j);
+        out.writeDouble(r_j);
+        out.writeDouble(p_j);
+        out.writeDouble(weight);
+        out.writeBoolean(banned);
+        out.writeInt(golden_num);
+        out.writeInt(golden_shared);
+        out.writeInt(golden_correct);
+        out.writeInt(coutLowReward);
+        out.writeInt(coutLowTask);
+        out.writeInt(coutHightReward);
+        out.writeInt(coutHightTask);
+    }
+
+    /* restore the scores, weight, ban and counters of the worker from a checkpoint */
+    public void restore(DataInputStream in) throws IOException {
+        s_j = in.readDouble();
+        r_j = in.readDouble();
+        p_j = in.readDouble();
+        weight = in.readDouble();
+        banned = in.readBoolean();
+        golden_num = in.readInt();
+        golden_shared = in.readInt();
+        golden_correct = in.readInt();
+        coutLowReward = in.readInt();
+        coutLowTask = in.readInt();
+        coutHightReward = in.readInt();
+        coutHightTask = in.readInt();
     }
 
     //new
-    /* update the worker's CLR */
-    public void setCLR() {
-        coutLowReward++;
+    /* update the worker's CLT and CLR by the changes of her labels on low-reward tasks */
+    public void countLow(int tasks, int rewards) {
+        coutLowTask += tasks;
+        coutLowReward += rewards;
+    }
+
+    /* update the worker's CHT and CHR by the changes of her labels on high-reward tasks */
+    public void countHigh(int tasks, int rewards) {
+        coutHightTask += tasks;
+        coutHightReward += rewards;
     }
 
     /* return the worker's CLR */
@@ -156,31 +258,16 @@ public class Worker {
         return coutLowReward;
     }
 
-    /* update the worker's CHR */
-    public void setCHR() {
-        coutHightReward++;
-    }
-
     /* return the worker's CHR */
     public int getCHR() {
         return coutHightReward;
     }
 
-    /* update the worker's CHR */
-    public void setCHT() {
-        coutHightTask++;
-    }
-
     /* return the worker's CHR */
     public int getCHT() {
         return coutHightTask;
     }
 
-    /* update the worker's CHR */
-    public void setCLT() {
-        coutLowTask++;
-    }
-
     /* return the worker's CHR */
     public int getCLT() {
         return coutLowTask;
@@ -0,0 +1,162 @@
+/**
+ * AssignmentStress.java checks that concurrent requests never over-assign tasks. A run of a
+ * dataset is opened as an engine (see TDSSA.open), and every worker of its requesting order
+ * issues a number of requests, which are shuffled and served by platform threads at the same
+ * time. A worker has at most one outstanding request, as in a client, so her label (if any)
+ * is sent before her next request. After the requests, the answer matrix is checked:
+ *
+ * - no worker is assigned a task twice, and every assignment in the task rows is also in
+ *   the rows of its worker;
+ * - without labels, every answered request holds exactly one assignment;
+ * - without labels, no golden task has its exposure plus its number of unreliable assigned
+ *   workers above K (the cap of the probabilistic task assignment), and the number of
+ *   golden tasks exactly at the cap is printed.
+ *
+ * Normal tasks have no cap on their number of workers in this tree, as a worker may only be
+ * assigned each task once. Any violation stops the check with an error.
+ *
+ * Usage: java AssignmentStress <dataset> <threads> <requests per worker> <B> <alpha> <tau> <delta> [labels] [repeats]
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class AssignmentStress {
+    /* return a run of the dataset with its attack and order */
+    static TDSSA open(Dataset data, String dataset, int run, String[] args) {
+        TDSSA tdssa = new TDSSA(Integer.parseInt(args[3]), Double.parseDouble(args[4]), Double.parseDouble(args[5]),
+                Double.parseDouble(args[6]), data);
+        tdssa.setSeed(run);
+        tdssa.readAttack(dataset, run);
+        tdssa.readOrder(dataset, run);
+        return tdssa;
+    }
+
+    /* return the requests of a run, i.e., a number of requests of each worker of its order, shuffled */
+    static List<Worker> requests(TDSSA tdssa, int per_worker, long seed) {
+        ArrayList<Worker> requests = new ArrayList<Worker>();
+        for (Worker worker : new LinkedHashSet<Worker>(tdssa.getOrder())) {
+            for (int i = 0; i < per_worker; i++) {
+                requests.add(worker);
+            }
+        }
+        Collections.shuffle(requests, new Random(seed));
+        return requests;
+    }
+
+    /* serve the requests on platform threads, labeling the assigned tasks if asked, and return the time in nanoseconds,
+       where the number of assigned requests is added to the counter */
+    static long serve(TDSSAEngine engine, List<Worker> requests, int threads, boolean labels, int L, AtomicLong assigned) {
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] pool = new Thread[threads];
+        for (int k = 0; k < threads; k++) {
+            pool[k] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = next.getAndIncrement(); i < requests.size(); i = next.getAndIncrement()) {
+                        Worker worker = requests.get(i);
+                        // a worker has at most one outstanding request
+                        synchronized (worker) {
+                            int task_id = engine.onRequest(worker.getWorkerId());
+                            if (task_id != TDSSAEngine.NO_TASK) {
+                                assigned.incrementAndGet();
+                                if (labels) {
+                                    engine.onLabel(worker.getWorkerId(), task_id, ThreadLocalRandom.current().nextInt(L));
+                                }
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                }
+            });
+            pool[k].start();
+        }
+        long time = System.nanoTime();
+        start.countDown();
+        for (Thread thread : pool) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        time = System.nanoTime() - time;
+        if (error.get() != null) {
+            throw new IllegalStateException("A request failed", error.get());
+        }
+        return time;
+    }
+
+    /* check the assignments of a run after its requests and return the number of golden tasks at the cap */
+    private static int check(AnswerMatrix answers, long assigned, boolean labels, int K, double delta) {
+        int row_num = 0;
+        int at_cap = 0;
+        for (int t = 0; t < answers.getTaskNum(); t++) {
+            Task task = answers.getTask(t);
+            HashSet<Integer> assignees = new HashSet<Integer>();
+            int unreliable = 0;
+            for (int i = 0; i < answers.assignedNum(t); i++) {
+                Worker worker = answers.getWorker(answers.assignedWorker(t, i));
+                if (!assignees.add(worker.getIndex())) {
+                    throw new IllegalStateException("Task " + task.getTaskId() + " is assigned twice to worker " + worker.getWorkerId());
+                }
+                if (!worker.isAssigned(task)) {
+                    throw new IllegalStateException("Worker " + worker.getWorkerId() + " misses her assignment of task " + task.getTaskId());
+                }
+                if (worker.getR() < delta) {
+                    unreliable++;
+                }
+                row_num++;
+            }
+            if (!labels && task.isGolden()) {
+                if (task.getExpose() + unreliable > K) {
+                    throw new IllegalStateException("Golden task " + task.getTaskId() + " is over the cap: exposure "
+                            + task.getExpose() + " plus " + unreliable + " unreliable workers above K = " + K);
+                }
+                if (task.getExpose() + unreliable == K) {
+                    at_cap++;
+                }
+            }
+        }
+        if (!labels && row_num != assigned) {
+            throw new IllegalStateException(assigned + " requests are answered, but " + row_num + " tasks are assigned");
+        }
+        return at_cap;
+    }
+
+    /* main function */
+    public static void main(String[] args) {
+        String dataset = args[0];
+        int threads = Integer.parseInt(args[1]);
+        int per_worker = Integer.parseInt(args[2]);
+        boolean labels = args.length > 7 && Boolean.parseBoolean(args[7]);
+        int repeats = args.length > 8 ? Integer.parseInt(args[8]) : 1;
+        Dataset data = new Dataset(dataset);
+        for (int repeat = 0; repeat < repeats; repeat++) {
+            TDSSA tdssa = open(data, dataset, repeat, args);
+            List<Worker> requests = requests(tdssa, per_worker, repeat);
+            TDSSAEngine engine = tdssa.open();
+            AtomicLong assigned = new AtomicLong();
+            long time = serve(engine, requests, threads, labels, data.getL(), assigned);
+            // the checks run before the final pass, which leaves the assignments as they are
+            int at_cap = check(tdssa.getAnswers(), assigned.get(), labels, data.getK(), Double.parseDouble(args[6]));
+            engine.finish();
+            // the caps are only checked without labels, as labels change the reliabilities and exposures of tasks
+            System.out.printf("%s: %d threads, %d requests, %d assigned, %.0f requests/ms, %s%n", dataset, threads,
+                    requests.size(), assigned.get(), requests.size() / (time / 1e6),
+                    labels ? "with labels" : at_cap + " golden tasks at the cap");
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * AssignmentThroughput.java measures the throughput of concurrent requests on an engine for
+ * a number of platform threads. For each number of threads, every repeat opens the same run
+ * of a dataset, serves the shuffled requests of its workers as AssignmentStress does, and
+ * the median of the requests per millisecond over the repeats is printed. With labels, each
+ * assigned task is labeled in the same call chain as its request, so that batches and bans
+ * take the write lock among the requests.
+ *
+ * Usage: java AssignmentThroughput <dataset> <threads, e.g. 1,4,64> <requests per worker> <B> <alpha> <tau> <delta> [labels] [repeats]
+ */
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AssignmentThroughput {
+    /* main function */
+    public static void main(String[] args) {
+        String dataset = args[0];
+        int per_worker = Integer.parseInt(args[2]);
+        boolean labels = args.length > 7 && Boolean.parseBoolean(args[7]);
+        int repeats = args.length > 8 ? Integer.parseInt(args[8]) : 5;
+        Dataset data = new Dataset(dataset);
+        for (String thread_num : args[1].split(",")) {
+            int threads = Integer.parseInt(thread_num);
+            double[] throughputs = new double[repeats];
+            long assigned_num = 0;
+            int request_num = 0;
+            for (int repeat = 0; repeat < repeats; repeat++) {
+                TDSSA tdssa = AssignmentStress.open(data, dataset, 0, args);
+                List<Worker> requests = AssignmentStress.requests(tdssa, per_worker, 0);
+                TDSSAEngine engine = tdssa.open();
+                AtomicLong assigned = new AtomicLong();
+                long time = AssignmentStress.serve(engine, requests, threads, labels, data.getL(), assigned);
+                engine.finish();
+                throughputs[repeat] = requests.size() / (time / 1e6);
+                assigned_num = assigned.get();
+                request_num = requests.size();
+            }
+            Arrays.sort(throughputs);
+            System.out.printf("%s: %3d threads %8.0f requests/ms (median of %d, %d requests, %d assigned)%s%n", dataset, threads,
+                    throughputs[repeats / 2], repeats, request_num, assigned_num, labels ? " with labels" : "");
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * BenchData.java loads all labels of a preprocessed dataset (see Preprocess) into tasks and
+ * workers for the benchmarks in this folder, as if every worker had labeled her tasks. The
+ * reliability of each worker is her accuracy on the golden tasks, her Sybil score is 0, and
+ * the normal tasks are aggregated by truth discovery. Benchmarks restore the aggregated
+ * labels with reset() before each timed pass, so that every pass starts from the same state.
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+public class BenchData {
+    private Dataset data; // loaded dataset
+    private Task[] tasks; // task of each ordinal
+    private Worker[] workers; // worker of each ordinal
+    private ArrayList<Task> normal; // normal tasks
+    private ArrayList<Worker> worker_list; // all workers
+    private int[] initial; // aggregated label of each task after loading
+    private int label_num; // number of labels on normal tasks
+
+    /* load a dataset from the current folder */
+    public BenchData(String dataset) {
+        data = new Dataset(dataset);
+        int L = data.getL();
+        AnswerMatrix source = data.getAnswers();
+        AnswerMatrix answers = new AnswerMatrix(source);
+        tasks = new Task[source.getTaskNum()];
+        normal = new ArrayList<Task>();
+        for (int t = 0; t < tasks.length; t++) {
+            tasks[t] = new Task(data.getTaskId(t), data.getTrueLabel(t), L);
+            answers.addTask(tasks[t]);
+            if (!data.isGolden(t)) {
+                normal.add(tasks[t]);
+            }
+        }
+        workers = new Worker[source.getWorkerNum()];
+        worker_list = new ArrayList<Worker>();
+        for (int w = 0; w < workers.length; w++) {
+            workers[w] = new Worker(data.getWorkerId(w));
+            answers.addWorker(workers[w]);
+            worker_list.add(workers[w]);
+        }
+        int[] golden_num = new int[workers.length];
+        int[] correct_num = new int[workers.length];
+        for (int t = 0; t < tasks.length; t++) {
+            for (int i = source.taskStart(t); i < source.taskEnd(t); i++) {
+                int w = source.taskWorker(i);
+                int label = source.taskAnswer(i);
+                tasks[t].assign(workers[w]);
+                workers[w].label(tasks[t], label);
+                if (data.isGolden(t)) {
+                    golden_num[w]++;
+                    if (label == data.getTrueLabel(t)) {
+                        correct_num[w]++;
+                    }
+                } else {
+                    label_num++;
+                }
+            }
+        }
+        for (int w = 0; w < workers.length; w++) {
+            workers[w].setS(0);
+            workers[w].setP(golden_num[w] == 0 ? 0 : (double) correct_num[w] / golden_num[w]);
+        }
+        initial = new int[tasks.length];
+        for (int t = 0; t < tasks.length; t++) {
+            initial[t] = tasks[t].getAggregated();
+        }
+    }
+
+    /* restore the aggregated labels after loading and set the weight of each worker to her reliability */
+    public void reset() {
+        for (int t = 0; t < tasks.length; t++) {
+            tasks[t].setAggregated(initial[t]);
+        }
+        for (Worker worker : workers) {
+            worker.setWeight(worker.getP());
+        }
+    }
+
+    /* return the label size */
+    public int getL() {
+        return data.getL();
+    }
+
+    /* return the normal tasks */
+    public Collection<Task> getNormal() {
+        return normal;
+    }
+
+    /* return all workers */
+    public Collection<Worker> getWorkers() {
+        return worker_list;
+    }
+
+    /* return the number of labels on normal tasks */
+    public int getLabelNum() {
+        return label_num;
+    }
+
+    /* return the aggregated label of each normal task */
+    public int[] aggregated() {
+        int[] aggregated = new int[normal.size()];
+        for (int t = 0; t < aggregated.length; t++) {
+            aggregated[t] = normal.get(t).getAggregated();
+        }
+        return aggregated;
+    }
+
+    /* return the fraction of the labeled normal tasks whose aggregated label is the true label */
+    public double accuracy() {
+        int correct = 0;
+        int labeled = 0;
+        for (Task task : normal) {
+            if (task.getAssignedNum() > 0) {
+                labeled++;
+                if (task.getAggregated() == task.getTrueLabel()) {
+                    correct++;
+                }
+            }
+        }
+        return labeled == 0 ? 0 : (double) correct / labeled;
+    }
+}
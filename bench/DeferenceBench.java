@@ -0,0 +1,85 @@
+/**
+ * DeferenceBench.java measures the cost of the STDEL deference check per request, before and
+ * after the reward-tier counters were kept on label events. Each run replays its requesting
+ * order through an engine twice from the same seed. The first replay only serves the
+ * requests. The second replay also recounts the tiers of the requesting worker from all her
+ * labeled tasks after every request, as the original check did, and compares the recount
+ * with the counters kept by the tasks. The runs are isolated, so the counters only hold the
+ * labels of the run, and any mismatch stops the benchmark with an error.
+ *
+ * Usage: java DeferenceBench <dataset> <runs> <B> <alpha> <tau> <delta> [tier]
+ */
+
+public class DeferenceBench {
+    /* replay a run, recounting the tiers of each requesting worker if asked, and return the time of the replay */
+    private static long replay(TDSSA tdssa, boolean recount, int tier, long[] recount_time) {
+        TDSSAEngine engine = tdssa.open();
+        long start = System.nanoTime();
+        for (Worker worker : tdssa.getOrder()) {
+            int task_id = engine.onRequest(worker.getWorkerId());
+            if (task_id != TDSSAEngine.NO_TASK) {
+                Task assigned_task = tdssa.getTask(task_id);
+                tdssa.observe(worker, assigned_task);
+                engine.onLabel(worker.getWorkerId(), task_id, tdssa.chooseLabel(worker, assigned_task));
+            }
+            if (recount) {
+                long recount_start = System.nanoTime();
+                int low_task = 0, low_reward = 0, high_task = 0, high_reward = 0;
+                for (int j = 0; j < worker.getLabeledNum(); j++) {
+                    Task task = worker.getLabeledTask(j);
+                    int label = worker.getLabeledLabel(j);
+                    if (task.getTask_reward() <= tier) {
+                        low_task++;
+                        if (label == task.getTrueLabel()) {
+                            low_reward++;
+                        }
+                    } else {
+                        high_task++;
+                        if (label == task.getAggregated()) {
+                            high_reward++;
+                        }
+                    }
+                }
+                recount_time[0] += System.nanoTime() - recount_start;
+                recount_time[1]++;
+                if (low_task != worker.getCLT() || low_reward != worker.getCLR()
+                        || high_task != worker.getCHT() || high_reward != worker.getCHR()) {
+                    throw new IllegalStateException("Kept counters of worker " + worker.getWorkerId() + " differ from the recount");
+                }
+            }
+        }
+        long time = System.nanoTime() - start;
+        engine.finish();
+        return time;
+    }
+
+    /* return a run of the dataset with its attack and order */
+    private static TDSSA open(Dataset data, String dataset, int run, String[] args, int tier) {
+        TDSSA tdssa = new TDSSA(Integer.parseInt(args[2]), Double.parseDouble(args[3]), Double.parseDouble(args[4]),
+                Double.parseDouble(args[5]), data);
+        tdssa.setRewardTier(tier);
+        tdssa.setSeed(run);
+        tdssa.readAttack(dataset, run);
+        tdssa.readOrder(dataset, run);
+        return tdssa;
+    }
+
+    /* main function */
+    public static void main(String[] args) {
+        String dataset = args[0];
+        int run_num = Integer.parseInt(args[1]);
+        int tier = args.length > 6 ? Integer.parseInt(args[6]) : TDSSA.REWARD_TIER;
+        Dataset data = new Dataset(dataset);
+        long kept = 0; // time of the replays with kept counters
+        long recounted = 0; // time of the replays that also recount the tiers
+        long[] recount_time = new long[2]; // time of the recounts and number of requests
+        for (int run = 0; run < run_num; run++) {
+            kept += replay(open(data, dataset, run, args, tier), false, tier, null);
+            recounted += replay(open(data, dataset, run, args, tier), true, tier, recount_time);
+        }
+        System.out.printf("%s: %d requests in %d runs, recounts match the kept counters%n", dataset, recount_time[1], run_num);
+        System.out.printf("recount per request %.0f ns%n", (double) recount_time[0] / recount_time[1]);
+        System.out.printf("replay with kept counters %.1f ms per run, with recounts %.1f ms per run%n",
+                kept / 1e6 / run_num, recounted / 1e6 / run_num);
+    }
+}
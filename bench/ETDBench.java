@@ -0,0 +1,102 @@
+/**
+ * ETDBench.java times the full passes of extended truth discovery on all labels of a dataset
+ * (see BenchData), before and after the chi-squared quantiles of the weights were cached.
+ * "before" is a copy of the pass that builds a ChiSquaredDistribution for every worker on
+ * every iteration as the original code did, and "after" is ExtendedTD.process. Both must
+ * give the same aggregated labels, or the benchmark stops with an error.
+ *
+ * Usage: java ETDBench <dataset> [passes] [warmup passes]
+ */
+
+import org.apache.commons.math3.distribution.ChiSquaredDistribution;
+
+public class ETDBench {
+    private static final double ALPHA = 0.05; // significance level of the chi-squared weight
+
+    /* one pass of extended truth discovery with uncached quantiles, returning the number of iterations */
+    private static int before(BenchData data) {
+        int L = data.getL();
+        double[] votes = new double[L];
+        int iteration = 0;
+        while (iteration < 1000) {
+            iteration++;
+            int difference = 0;
+            for (Task task : data.getNormal()) {
+                for (int i = 0; i < L; i++) {
+                    votes[i] = 0;
+                }
+                for (int j = 0; j < task.getAssignedNum(); j++) {
+                    Worker worker = task.getAssignedWorker(j);
+                    int label = task.getAssignedLabel(j);
+                    if (label != -1) {
+                        votes[label] += worker.getS() / L + (1 - worker.getS()) * worker.getWeight();
+                    }
+                }
+                int original_label = task.getAggregated();
+                double max_vote = -1;
+                for (int i = 0; i < L; i++) {
+                    if (votes[i] > max_vote) {
+                        task.setAggregated(i);
+                        max_vote = votes[i];
+                    }
+                }
+                if (original_label != task.getAggregated()) {
+                    difference++;
+                }
+            }
+            if (difference == 0) {
+                break;
+            }
+            for (Worker worker : data.getWorkers()) {
+                double sigema = 0.0;
+                for (int j = 0; j < worker.getLabeledNum(); j++) {
+                    if (worker.getLabeledLabel(j) != -1) {
+                        sigema += worker.getLabeledLabel(j) == worker.getLabeledTask(j).getAggregated() ? 0 : 2;
+                    }
+                }
+                worker.setWeight(new ChiSquaredDistribution(worker.getLabeledNum()).inverseCumulativeProbability(1 - ALPHA / 2) / sigema);
+            }
+        }
+        return iteration;
+    }
+
+    /* time a number of passes after warmup passes and print the time per pass and per iteration */
+    private static int[] time(String name, BenchData data, boolean cached, int passes, int warmup) {
+        ExtendedTD etd = new ExtendedTD(data.getL());
+        long time = 0;
+        long iteration_num = 0;
+        for (int pass = 0; pass < warmup + passes; pass++) {
+            data.reset();
+            long start = System.nanoTime();
+            int iterations;
+            if (cached) {
+                etd.process(data.getNormal(), data.getWorkers());
+                iterations = etd.getIterationNum();
+            } else {
+                iterations = before(data);
+            }
+            if (pass >= warmup) {
+                time += System.nanoTime() - start;
+                iteration_num += iterations;
+            }
+        }
+        System.out.printf("%-6s %8.3f ms per pass %8.3f ms per iteration (%d iterations per pass)%n", name,
+                time / 1e6 / passes, time / 1e6 / iteration_num, iteration_num / passes);
+        return data.aggregated();
+    }
+
+    /* main function */
+    public static void main(String[] args) {
+        BenchData data = new BenchData(args[0]);
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int warmup = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        System.out.println(args[0] + ": " + data.getNormal().size() + " tasks, " + data.getWorkers().size() + " workers, "
+                + data.getLabelNum() + " labels");
+        int[] before = time("before", data, false, passes, warmup);
+        int[] after = time("after", data, true, passes, warmup);
+        if (!java.util.Arrays.equals(before, after)) {
+            throw new IllegalStateException("Cached quantiles change the aggregated labels");
+        }
+        System.out.printf("accuracy %.4f%n", data.accuracy());
+    }
+}
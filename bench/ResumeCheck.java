@@ -0,0 +1,111 @@
+/**
+ * ResumeCheck.java checks that a run resumed from a checkpoint gives the same results as an
+ * uninterrupted run (see tdssa.checkpoint and tdssa.resume). Each run of a dataset is run
+ * three times from the same seed: without checkpoints, writing a checkpoint every interval
+ * requests, and resumed from the last checkpoint written by the second. The three must give
+ * the same A-Accuracy, E-Number, T-Cost and attackGotReward, and the same counters of the
+ * engine (requests, labels, bans, batches, iterations and promotions), or the check stops
+ * with an error. The latencies are not compared, as they only cover the calls after the
+ * resumption. Unless the runs are isolated, each run continues the workers of the previous
+ * uninterrupted run, as in TDSSA.
+ *
+ * The runs take the same settings as in TDSSA from tdssa.td, tdssa.etd.incremental,
+ * tdssa.etd.parallelism, tdssa.etd.background and tdssa.stdel.tier, so that the state of each
+ * kind of truth discovery and of incremental extended truth discovery in the checkpoint is
+ * checked as well. With tdssa.etd.background the results depend on the thread timing, so the
+ * differences of the three runs are only printed instead of stopping the check.
+ *
+ * Usage: java ResumeCheck <dataset> <runs> <interval> <B> <alpha> <tau> <delta> [isolated]
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+public class ResumeCheck {
+    /* return a run of the dataset with its attack and order, continuing the workers of the previous run (if any) */
+    private static TDSSA open(Dataset data, String dataset, int run, String[] args, TDSSA previous, ForkJoinPool etd_pool) {
+        TDSSA tdssa = new TDSSA(Integer.parseInt(args[3]), Double.parseDouble(args[4]), Double.parseDouble(args[5]),
+                Double.parseDouble(args[6]), data);
+        tdssa.setTruthDiscovery(System.getProperty("tdssa.td", "etd"));
+        tdssa.setIncrementalETD(Boolean.getBoolean("tdssa.etd.incremental"));
+        tdssa.setETDPool(etd_pool);
+        tdssa.setBackgroundETD(Boolean.getBoolean("tdssa.etd.background"));
+        tdssa.setRewardTier(Integer.getInteger("tdssa.stdel.tier", TDSSA.REWARD_TIER));
+        tdssa.setSeed(run);
+        tdssa.readAttack(dataset, run);
+        tdssa.readOrder(dataset, run);
+        if (previous != null) {
+            tdssa.inherit(previous);
+        }
+        return tdssa;
+    }
+
+    /* return the results and counters of a completed run that a resumed run must reproduce */
+    private static String results(TDSSA tdssa) {
+        TDSSAEngine.Metrics metrics = tdssa.getMetrics();
+        return "A-Accuracy:" + tdssa.getAAccuracy() + " attackGotReward:" + tdssa.getAttackGotReward() + " E-Number:"
+                + tdssa.getENumber() + " T-Cost:" + tdssa.getTCost() + " requests:" + metrics.getRequestNum() + " labels:"
+                + metrics.getLabelNum() + " golden:" + metrics.getGoldenNum() + " bans:" + metrics.getBanNum() + " exposures:"
+                + metrics.getExposureNum() + " batches:" + metrics.getBatchNum() + " iterations:" + metrics.getETDIterationNum()
+                + " final:" + metrics.getFinalIterationNum() + " promoted:" + metrics.getPromotedNum();
+    }
+
+    /* stop the check with an error if a run differs from the uninterrupted run, or only print it if asked */
+    private static void compare(String expected, String actual, String message, boolean strict) {
+        if (actual.equals(expected)) {
+            return;
+        }
+        if (strict) {
+            throw new IllegalStateException(message + ":\n  " + expected + "\n  " + actual);
+        }
+        System.out.println(message + " (background batches):\n  " + expected + "\n  " + actual);
+    }
+
+    /* main function */
+    public static void main(String[] args) throws IOException {
+        String dataset = args[0];
+        int run_num = Integer.parseInt(args[1]);
+        int interval = Integer.parseInt(args[2]);
+        boolean isolated = args.length > 7 && Boolean.parseBoolean(args[7]);
+        String td_kind = System.getProperty("tdssa.td", "etd");
+        boolean strict = !Boolean.getBoolean("tdssa.etd.background"); // whether a difference stops the check
+        Dataset data = new Dataset(dataset);
+        TruthDiscovery.of(td_kind, data.getL()); // an unknown kind is rejected before the runs
+        int etd_parallelism = Integer.getInteger("tdssa.etd.parallelism", 1);
+        ForkJoinPool etd_pool = etd_parallelism > 1 ? new ForkJoinPool(etd_parallelism) : null;
+        File checkpoint = File.createTempFile("checkpoint", ".bin");
+        TDSSA previous = null;
+        try {
+            for (int run = 0; run < run_num; run++) {
+                TDSSA plain = open(data, dataset, run, args, previous, etd_pool);
+                plain.run();
+                String expected = results(plain);
+
+                checkpoint.delete();
+                TDSSA written = open(data, dataset, run, args, previous, etd_pool);
+                written.setCheckpoint(checkpoint.getPath(), interval);
+                written.run();
+                if (!checkpoint.exists()) {
+                    throw new IllegalStateException("Run " + (run + 1) + " wrote no checkpoint with an interval of " + interval);
+                }
+
+                TDSSA resumed = open(data, dataset, run, args, previous, etd_pool);
+                resumed.setResume(checkpoint.getPath(), false);
+                resumed.run();
+
+                compare(expected, results(written), "Writing checkpoints changes run " + (run + 1), strict);
+                compare(expected, results(resumed), "Resumed run " + (run + 1) + " differs", strict);
+                System.out.println("Run " + (run + 1) + " resumed from a checkpoint of " + checkpoint.length() + " bytes --- " + expected);
+                previous = isolated ? null : plain;
+            }
+        } finally {
+            checkpoint.delete();
+            if (etd_pool != null) {
+                etd_pool.shutdown();
+            }
+        }
+        System.out.println(dataset + " (" + td_kind + (Boolean.getBoolean("tdssa.etd.incremental") ? ", incremental" : "") + "): "
+                + run_num + " resumed runs " + (strict ? "match the uninterrupted runs" : "completed"));
+    }
+}
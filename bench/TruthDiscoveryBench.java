@@ -0,0 +1,53 @@
+/**
+ * TruthDiscoveryBench.java compares the full passes of the truth discovery engines (see
+ * TruthDiscovery) on all labels of a dataset (see BenchData). For each engine, it times the
+ * copy of the labels into sparse labels (see SparseLabels), the pass over the sparse labels,
+ * and the pass over the tasks and workers as a whole, i.e., copy, pass and apply, and prints
+ * them with the number of iterations and the accuracy of the aggregated labels.
+ *
+ * Usage: java TruthDiscoveryBench <dataset> [passes] [warmup passes] [engines, e.g. etd,majority,ds,catd]
+ */
+
+public class TruthDiscoveryBench {
+    /* time a number of passes of an engine after warmup passes and print the times per pass */
+    private static void time(String kind, BenchData data, int passes, int warmup) {
+        TruthDiscovery td = TruthDiscovery.of(kind, data.getL());
+        long copy_time = 0;
+        long pass_time = 0;
+        long total_time = 0;
+        long iteration_num = 0;
+        for (int pass = 0; pass < warmup + passes; pass++) {
+            data.reset();
+            long start = System.nanoTime();
+            SparseLabels labels = new SparseLabels(data.getNormal(), data.getWorkers(), data.getL());
+            long copied = System.nanoTime();
+            td.process(labels);
+            long end = System.nanoTime();
+            data.reset();
+            long whole = System.nanoTime();
+            td.process(data.getNormal(), data.getWorkers());
+            if (pass >= warmup) {
+                copy_time += copied - start;
+                pass_time += end - copied;
+                total_time += System.nanoTime() - whole;
+                iteration_num += td.getIterationNum();
+            }
+        }
+        System.out.printf("%-8s copy %8.3f ms  pass %8.3f ms  whole %8.3f ms  %4d iterations  accuracy %.4f%n", kind,
+                copy_time / 1e6 / passes, pass_time / 1e6 / passes, total_time / 1e6 / passes, iteration_num / passes,
+                data.accuracy());
+    }
+
+    /* main function */
+    public static void main(String[] args) {
+        BenchData data = new BenchData(args[0]);
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int warmup = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        String[] kinds = (args.length > 3 ? args[3] : "etd,majority,ds,catd").split(",");
+        System.out.println(args[0] + ": " + data.getNormal().size() + " tasks, " + data.getWorkers().size() + " workers, "
+                + data.getLabelNum() + " labels");
+        for (String kind : kinds) {
+            time(kind, data, passes, warmup);
+        }
+    }
+}